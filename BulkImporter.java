@@ -0,0 +1,614 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Bulk import of delivery jobs or orders from CSV or JSON Lines files, for
+ loading a branch's history in one go instead of one createDeliveryJob call
+ at a time.
+
+ The file is split into chunks of about chunkBytes, cut at line ends, and
+ the chunks are read and parsed on parseThreads threads. Chunks are then
+ taken in file order on the calling thread: jobs go through
+ DeliveryManager.restoreJob, which rejects duplicate ids and duplicate
+ (customer, address, day) jobs and accepts past dates and any status, so
+ historical rows keep what they recorded. Accepted rows are persisted in
+ batches of batchRows (DeliveryJob.saveAllToSupabase for jobs, one insert
+ per batch for orders) on persistThreads threads while parsing continues.
+ Only a few chunks and batches are in flight at once, so memory stays flat
+ however large the file is.
+
+ CSV files need a header row naming the columns; unknown columns are
+ ignored. Quoted fields may contain commas and doubled quotes but not line
+ breaks. JSONL files hold one object per line with the same field names.
+   jobs:   job_id, customer_name, delivery_address, goods_description,
+           total_amount, amount_paid, created_date, delivery_date,
+           assigned_driver_id, status
+   orders: customer_id, items, order_total
+ Jobs without a job_id get a generated one. Orders have no key, so an order
+ repeating an earlier row of the same import exactly is counted as a
+ duplicate.
+
+ Run: java BulkImporter jobs|orders <file> [--no-persist]
+*/
+public class BulkImporter {
+    public enum Format { CSV, JSONL }
+
+    public static final int DEFAULT_CHUNK_BYTES = 4 * 1024 * 1024;
+    public static final int DEFAULT_BATCH_ROWS = SupabaseWriteBehind.DEFAULT_MAX_BATCH_ROWS;
+    public static final int DEFAULT_PERSIST_THREADS = 4;
+    private static final int MAX_REPORTED_ERRORS = 20;
+    private static final int SCAN_BYTES = 8 * 1024;
+
+    private static final String[] JOB_COLUMNS = {
+        "job_id", "customer_name", "delivery_address", "goods_description", "total_amount",
+        "amount_paid", "created_date", "delivery_date", "assigned_driver_id", "status"
+    };
+    private static final int JOB_ID = 0, CUSTOMER = 1, ADDRESS = 2, GOODS = 3, TOTAL = 4,
+        PAID = 5, CREATED = 6, DELIVERY = 7, DRIVER = 8, STATUS = 9;
+
+    private static final String[] ORDER_COLUMNS = { "customer_id", "items", "order_total" };
+    private static final int ORDER_CUSTOMER = 0, ORDER_ITEMS = 1, ORDER_TOTAL = 2;
+
+    private final DeliveryManager manager;
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+    private int chunkBytes = DEFAULT_CHUNK_BYTES;
+    private int batchRows = DEFAULT_BATCH_ROWS;
+    private int persistThreads = DEFAULT_PERSIST_THREADS;
+    private boolean persist = true;
+
+    public BulkImporter(DeliveryManager manager) {
+        if (manager == null) {
+            throw new IllegalArgumentException("Manager cannot be null");
+        }
+        this.manager = manager;
+    }
+
+    public void setParseThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Parse threads must be positive");
+        this.parseThreads = threads;
+    }
+
+    public void setChunkBytes(int bytes) {
+        if (bytes < 1024) throw new IllegalArgumentException("Chunks must be at least 1024 bytes");
+        this.chunkBytes = bytes;
+    }
+
+    public void setBatchRows(int rows) {
+        if (rows < 1) throw new IllegalArgumentException("Batch size must be positive");
+        this.batchRows = rows;
+    }
+
+    public void setPersistThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Persist threads must be positive");
+        this.persistThreads = threads;
+    }
+
+    // When false rows are only validated and (for jobs) added to the manager
+    public void setPersist(boolean persist) {
+        this.persist = persist;
+    }
+
+    // Format from the file extension: .csv, otherwise JSON Lines
+    public static Format formatOf(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".csv") ? Format.CSV : Format.JSONL;
+    }
+
+    // ------------------- Entry points -------------------
+
+    public Result importJobs(Path file) throws IOException, InterruptedException {
+        return importJobs(file, formatOf(file));
+    }
+
+    public Result importJobs(Path file, Format format) throws IOException, InterruptedException {
+        return run(file, format, JOB_COLUMNS, new int[] { CUSTOMER, ADDRESS }, BulkImporter::parseJob,
+            manager::restoreJob, DeliveryJob::saveAllToSupabase);
+    }
+
+    public Result importOrders(Path file) throws IOException, InterruptedException {
+        return importOrders(file, formatOf(file));
+    }
+
+    public Result importOrders(Path file, Format format) throws IOException, InterruptedException {
+        // only the calling thread accepts rows, so a plain set is enough
+        Set<OrderRow> seen = new HashSet<>();
+        return run(file, format, ORDER_COLUMNS, new int[] { ORDER_CUSTOMER, ORDER_ITEMS, ORDER_TOTAL },
+            BulkImporter::parseOrder, seen::add, BulkImporter::saveOrders);
+    }
+
+    // ------------------- Pipeline -------------------
+
+    private interface RowParser<T> {
+        // Throws IllegalArgumentException with the reason for an invalid row
+        T parse(String[] fields);
+    }
+
+    private interface RowAcceptor<T> {
+        // False for a duplicate
+        boolean accept(T row);
+    }
+
+    private interface BatchWriter<T> {
+        boolean save(List<T> rows) throws IOException, InterruptedException;
+    }
+
+    // Parsed rows of one chunk plus its line count and the first few errors (line numbers relative to the chunk)
+    private static final class Chunk<T> {
+        final List<T> rows = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        final List<Integer> errorLines = new ArrayList<>();
+        int lines;
+        int invalid;
+    }
+
+    private <T> Result run(Path file, Format format, String[] columns, int[] required, RowParser<T> parser,
+                           RowAcceptor<T> acceptor, BatchWriter<T> writer) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Result result = new Result();
+        ExecutorService parsers = Executors.newFixedThreadPool(parseThreads, daemonThreads("bulk-import-parse"));
+        ExecutorService persisters = persist
+            ? Executors.newFixedThreadPool(persistThreads, daemonThreads("bulk-import-persist")) : null;
+        // bounds how many batches are queued or being written
+        Semaphore batchSlots = new Semaphore(persistThreads * 2);
+        List<Future<?>> saves = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            int linesBefore = 0;
+            int[] slots;
+            Map<String, Integer> slotByName = new HashMap<>();
+            for (int i = 0; i < columns.length; i++) slotByName.put(columns[i], i);
+            if (format == Format.CSV) {
+                long headerEnd = nextLineStart(channel, 0, size);
+                String header = stripBom(trimLine(decode(channel, 0, headerEnd)));
+                slots = headerSlots(splitCsv(header), slotByName);
+                for (int column : required) {
+                    if (!contains(slots, column)) {
+                        throw new IOException("Missing column " + columns[column] + " in " + file);
+                    }
+                }
+                position = headerEnd;
+                linesBefore = 1;
+            } else {
+                slots = null;
+            }
+
+            Deque<Future<Chunk<T>>> pending = new ArrayDeque<>();
+            List<T> batch = new ArrayList<>(batchRows);
+            while (position < size || !pending.isEmpty()) {
+                // keep a couple of chunks per parser queued ahead of the consumer
+                while (position < size && pending.size() < parseThreads * 2) {
+                    long from = position;
+                    long cut = Math.min(size, from + chunkBytes);
+                    long to = cut < size ? nextLineStart(channel, cut, size) : size;
+                    position = to;
+                    boolean stripBom = from == 0;
+                    pending.add(parsers.submit(() -> parseChunk(channel, from, to, stripBom, format, columns.length,
+                        slots, slotByName, parser)));
+                }
+                Chunk<T> chunk = await(pending.removeFirst());
+                for (int i = 0; i < chunk.errors.size(); i++) {
+                    result.addError(linesBefore + chunk.errorLines.get(i), chunk.errors.get(i));
+                }
+                linesBefore += chunk.lines;
+                result.invalid += chunk.invalid;
+                for (T row : chunk.rows) {
+                    if (!acceptor.accept(row)) {
+                        result.duplicates++;
+                        continue;
+                    }
+                    result.imported++;
+                    if (persisters == null) continue;
+                    batch.add(row);
+                    if (batch.size() >= batchRows) {
+                        saves.add(submitBatch(persisters, batchSlots, batch, writer, result));
+                        batch = new ArrayList<>(batchRows);
+                    }
+                }
+                result.rows += chunk.rows.size() + chunk.invalid;
+            }
+            if (persisters != null && !batch.isEmpty()) {
+                saves.add(submitBatch(persisters, batchSlots, batch, writer, result));
+            }
+            for (Future<?> save : saves) {
+                await(save);
+            }
+        } finally {
+            parsers.shutdownNow();
+            if (persisters != null) persisters.shutdownNow();
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private static <T> Chunk<T> parseChunk(FileChannel channel, long from, long to, boolean stripBom, Format format,
+                                           int columnCount, int[] slots, Map<String, Integer> slotByName,
+                                           RowParser<T> parser) throws IOException {
+        String text = decode(channel, from, to);
+        if (stripBom) text = stripBom(text);
+        Chunk<T> chunk = new Chunk<>();
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) lineEnd = text.length();
+            String line = trimLine(text.substring(lineStart, lineEnd));
+            lineStart = lineEnd + 1;
+            chunk.lines++;
+            if (line.isBlank()) continue;
+            try {
+                String[] fields = format == Format.CSV
+                    ? csvFields(line, slots, columnCount) : jsonFields(line, slotByName, columnCount);
+                chunk.rows.add(parser.parse(fields));
+            } catch (IllegalArgumentException e) {
+                chunk.invalid++;
+                if (chunk.errors.size() < MAX_REPORTED_ERRORS) {
+                    chunk.errorLines.add(chunk.lines);
+                    chunk.errors.add(e.getMessage());
+                }
+            }
+        }
+        return chunk;
+    }
+
+    private static <T> Future<?> submitBatch(ExecutorService persisters, Semaphore slots, List<T> batch,
+                                             BatchWriter<T> writer, Result result) throws InterruptedException {
+        slots.acquire();
+        try {
+            return persisters.submit(() -> {
+                try {
+                    if (writer.save(batch)) {
+                        result.persisted.addAndGet(batch.size());
+                    } else {
+                        result.failedBatches.incrementAndGet();
+                        result.persistFailed.addAndGet(batch.size());
+                    }
+                } catch (IOException | RuntimeException e) {
+                    result.failedBatches.incrementAndGet();
+                    result.persistFailed.addAndGet(batch.size());
+                    result.lastPersistError = e.getMessage();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.persistFailed.addAndGet(batch.size());
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    // Unwraps a task's outcome, rethrowing what it failed with
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException("Import task failed", cause);
+        }
+    }
+
+    // ------------------- Rows -------------------
+
+    private static DeliveryJob parseJob(String[] f) {
+        String customer = required(f[CUSTOMER], "customer_name");
+        String address = required(f[ADDRESS], "delivery_address");
+        double total = amount(f[TOTAL], "total_amount");
+        double paid = amount(f[PAID], "amount_paid");
+        LocalDateTime created = timestamp(f[CREATED], "created_date");
+        LocalDateTime delivery = timestamp(f[DELIVERY], "delivery_date");
+        String driver = blank(f[DRIVER]) ? null : f[DRIVER].trim();
+        DeliveryJob.DeliveryStatus status;
+        if (blank(f[STATUS])) {
+            status = driver != null ? DeliveryJob.DeliveryStatus.ASSIGNED : DeliveryJob.DeliveryStatus.PENDING;
+        } else {
+            try {
+                status = DeliveryJob.DeliveryStatus.valueOf(f[STATUS].trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown status " + f[STATUS]);
+            }
+        }
+        String jobId = blank(f[JOB_ID])
+            ? IdGenerator.shared().nextString(DeliveryJob.JOB_ID_PREFIX) : f[JOB_ID].trim();
+        return DeliveryJob.restore(jobId, customer, address, f[GOODS] != null ? f[GOODS] : "", total, paid,
+            created, delivery, driver, status);
+    }
+
+    // One row of the orders table; equal rows are duplicates
+    private static final class OrderRow {
+        final String customerId;
+        final String items;
+        final long totalCents;
+
+        OrderRow(String customerId, String items, long totalCents) {
+            this.customerId = customerId;
+            this.items = items;
+            this.totalCents = totalCents;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof OrderRow)) return false;
+            OrderRow other = (OrderRow) o;
+            return totalCents == other.totalCents && customerId.equals(other.customerId) && items.equals(other.items);
+        }
+
+        @Override
+        public int hashCode() {
+            return (customerId.hashCode() * 31 + items.hashCode()) * 31 + Long.hashCode(totalCents);
+        }
+
+        void writeJson(JsonWriter out) {
+            StringBuilder total = new StringBuilder(24);
+            MessageTemplate.appendCents(total, totalCents);
+            out.beginObject();
+            out.name("customer_id").value(customerId);
+            out.name("items").value(items);
+            out.name("order_total").rawValue(total.toString());
+            out.endObject();
+        }
+    }
+
+    private static OrderRow parseOrder(String[] f) {
+        String customerId = required(f[ORDER_CUSTOMER], "customer_id").trim();
+        String items = required(f[ORDER_ITEMS], "items");
+        long totalCents;
+        try {
+            totalCents = new BigDecimal(required(f[ORDER_TOTAL], "order_total").trim())
+                .setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new IllegalArgumentException("order_total is not an amount: " + f[ORDER_TOTAL]);
+        }
+        if (totalCents < 0) {
+            throw new IllegalArgumentException("order_total cannot be negative");
+        }
+        return new OrderRow(customerId, items, totalCents);
+    }
+
+    private static boolean saveOrders(List<OrderRow> rows) throws IOException, InterruptedException {
+        JsonWriter body = JsonWriter.forThread().array(rows, OrderRow::writeJson);
+        HttpResponse<String> resp = SupabaseClient.postUpsert("orders", body, null, null);
+        return resp.statusCode() >= 200 && resp.statusCode() < 300;
+    }
+
+    private static boolean blank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    private static String required(String value, String column) {
+        if (blank(value)) throw new IllegalArgumentException(column + " is required");
+        return value;
+    }
+
+    private static double amount(String value, String column) {
+        if (blank(value)) return 0.0;
+        double amount;
+        try {
+            amount = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " is not a number: " + value);
+        }
+        if (!(amount >= 0) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException(column + " must be a non-negative amount");
+        }
+        return amount;
+    }
+
+    private static LocalDateTime timestamp(String value, String column) {
+        if (blank(value)) return null;
+        LocalDateTime parsed = DeliveryJob.parseTimestamp(value.trim());
+        if (parsed == null) throw new IllegalArgumentException(column + " is not a date-time: " + value);
+        return parsed;
+    }
+
+    // ------------------- Text -------------------
+
+    // Maps each header column to its field slot, -1 for columns that are not imported
+    private static int[] headerSlots(List<String> header, Map<String, Integer> slotByName) {
+        int[] slots = new int[header.size()];
+        for (int i = 0; i < slots.length; i++) {
+            Integer slot = slotByName.get(header.get(i).trim().toLowerCase(Locale.ROOT));
+            slots[i] = slot != null ? slot : -1;
+        }
+        return slots;
+    }
+
+    private static String[] csvFields(String line, int[] slots, int columnCount) {
+        List<String> values = splitCsv(line);
+        String[] fields = new String[columnCount];
+        for (int i = 0; i < values.size() && i < slots.length; i++) {
+            if (slots[i] >= 0) fields[slots[i]] = values.get(i);
+        }
+        return fields;
+    }
+
+    // RFC 4180 fields within one line: "a,""b""" -> [a, "b"]
+    private static List<String> splitCsv(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("unterminated quoted field");
+        values.add(field.toString());
+        return values;
+    }
+
+    private static String[] jsonFields(String line, Map<String, Integer> slotByName, int columnCount) {
+        String[] fields = new String[columnCount];
+        JsonReader reader = new JsonReader(line);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            Integer slot = slotByName.get(reader.nextName());
+            if (slot != null) {
+                fields[slot] = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return fields;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) return true;
+        }
+        return false;
+    }
+
+    private static String trimLine(String line) {
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    private static String stripBom(String text) {
+        return text.startsWith("\uFEFF") ? text.substring(1) : text;
+    }
+
+    // Positional reads, so parser threads can share the channel
+    private static String decode(FileChannel channel, long from, long to) throws IOException {
+        long length = to - from;
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Chunk too large: " + length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, from + buffer.position()) < 0) break;
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    // Offset just past the first '\n' at or after position, or size
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BYTES);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // ------------------- Result -------------------
+
+    public static final class Result {
+        // written by the importing thread only
+        private long rows;
+        private long imported;
+        private long invalid;
+        private long duplicates;
+        private long elapsedNanos;
+        private final List<String> errors = new ArrayList<>();
+        // updated by persist threads
+        private final AtomicLong persisted = new AtomicLong();
+        private final AtomicLong persistFailed = new AtomicLong();
+        private final AtomicLong failedBatches = new AtomicLong();
+        private volatile String lastPersistError;
+
+        private void addError(int line, String message) {
+            if (errors.size() < MAX_REPORTED_ERRORS) errors.add("line " + line + ": " + message);
+        }
+
+        public long getRowCount() { return rows; }
+        public long getImportedCount() { return imported; }
+        public long getInvalidCount() { return invalid; }
+        public long getDuplicateCount() { return duplicates; }
+        public long getPersistedCount() { return persisted.get(); }
+        public long getPersistFailedCount() { return persistFailed.get(); }
+        public long getFailedBatchCount() { return failedBatches.get(); }
+        public String getLastPersistError() { return lastPersistError; }
+        public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+        // The first invalid rows, as "line N: reason"
+        public List<String> getErrors() { return Collections.unmodifiableList(errors); }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos > 0 ? rows * 1e9 / elapsedNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows in %.2f s (%.0f rows/s): %d imported, %d duplicate, %d invalid, %d persisted, %d not persisted",
+                rows, elapsedNanos / 1e9, getRowsPerSecond(), imported, duplicates, invalid,
+                persisted.get(), persistFailed.get());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || !(args[0].equals("jobs") || args[0].equals("orders"))) {
+            System.out.println("Usage: java BulkImporter jobs|orders <file> [--no-persist]");
+            return;
+        }
+        BulkImporter importer = new BulkImporter(new DeliveryManager());
+        importer.setPersist(!(args.length > 2 && args[2].equals("--no-persist")));
+        Path file = Paths.get(args[1]);
+        Result result = args[0].equals("jobs") ? importer.importJobs(file) : importer.importOrders(file);
+        System.out.println(result);
+        for (String error : result.getErrors()) {
+            System.out.println("  " + error);
+        }
+        if (result.getLastPersistError() != null) {
+            System.out.println("  last persist error: " + result.getLastPersistError());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/*
+ Cart lines and running totals for an Order, in whole cents.
+
+ Lines are kept in parallel arrays keyed by the int product id, in the
+ order they were first added; carts are a few dozen lines at most, so a
+ linear scan over the ids beats hashing boxed keys. Each line is priced
+ when first added.
+
+ The subtotal moves by the line delta on every add or remove, and the
+ discount, tax and total are re-derived from it right away, so the totals
+ are always current and reading them is O(1). Discount and tax are rates in
+ basis points (1500 = 15%) applied to the whole subtotal and rounded half
+ up to the cent once, the way a receipt does, rather than per line.
+
+ Nothing here formats text; Order renders the lines and totals.
+*/
+public final class CartPricing {
+    public static final int BASIS_POINTS = 10_000;
+
+    private static final int INITIAL_LINES = 8;
+
+    private int[] productIds = new int[INITIAL_LINES];
+    private int[] quantities = new int[INITIAL_LINES];
+    private long[] unitCents = new long[INITIAL_LINES];
+    private Item[] items = new Item[INITIAL_LINES];
+    private int size;
+
+    private int discountBasisPoints;
+    private int taxBasisPoints;
+
+    private long subtotalCents;
+    private long discountCents;
+    private long taxCents;
+    private long totalCents;
+
+    public CartPricing(int discountBasisPoints, int taxBasisPoints) {
+        setDiscountBasisPoints(discountBasisPoints);
+        setTaxBasisPoints(taxBasisPoints);
+    }
+
+    // ------------------- Lines -------------------
+
+    // Adds quantity units of the item, merging with an existing line for the same product id
+    public void add(Item item, int quantity) {
+        if (item == null || item.getItemID() == null || quantity < 1) {
+            throw new IllegalArgumentException("Item with a product id and a positive quantity is required");
+        }
+        int productId = item.getItemID();
+        int i = indexOf(productId);
+        // work out the new amounts before touching anything, so an overflow leaves the cart as it was
+        long unit = i < 0 ? toCents(item.getItemPrice()) : unitCents[i];
+        int newQuantity = Math.addExact(i < 0 ? 0 : quantities[i], quantity);
+        long newSubtotal = Math.addExact(subtotalCents, Math.multiplyExact(unit, (long) quantity));
+        Math.multiplyExact(unit, (long) newQuantity);
+        if (i < 0) {
+            i = size;
+            if (i == productIds.length) grow();
+            productIds[i] = productId;
+            unitCents[i] = unit;
+            items[i] = item;
+            size++;
+        }
+        quantities[i] = newQuantity;
+        subtotalCents = newSubtotal;
+        reprice();
+    }
+
+    // Removes the whole line; returns the quantity it held, or 0 if the product was not in the cart
+    public int remove(int productId) {
+        int i = indexOf(productId);
+        if (i < 0) return 0;
+        int quantity = quantities[i];
+        subtotalCents -= lineCents(i);
+        int tail = size - i - 1;
+        System.arraycopy(productIds, i + 1, productIds, i, tail);
+        System.arraycopy(quantities, i + 1, quantities, i, tail);
+        System.arraycopy(unitCents, i + 1, unitCents, i, tail);
+        System.arraycopy(items, i + 1, items, i, tail);
+        items[--size] = null;
+        reprice();
+        return quantity;
+    }
+
+    public void clear() {
+        Arrays.fill(items, 0, size, null);
+        size = 0;
+        subtotalCents = 0;
+        reprice();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int productId) {
+        return indexOf(productId) >= 0;
+    }
+
+    public int getQuantity(int productId) {
+        int i = indexOf(productId);
+        return i < 0 ? 0 : quantities[i];
+    }
+
+    // The item added under productId, or null
+    public Item itemFor(int productId) {
+        int i = indexOf(productId);
+        return i < 0 ? null : items[i];
+    }
+
+    // Line i in insertion order, 0 <= i < size()
+    public int size() { return size; }
+    public int productIdAt(int i) { return productIds[checkIndex(i)]; }
+    public Item itemAt(int i) { return items[checkIndex(i)]; }
+    public int quantityAt(int i) { return quantities[checkIndex(i)]; }
+    public long unitCentsAt(int i) { return unitCents[checkIndex(i)]; }
+    public long lineCentsAt(int i) { return lineCents(checkIndex(i)); }
+
+    // ------------------- Totals -------------------
+
+    public long getSubtotalCents() { return subtotalCents; }
+    public long getDiscountCents() { return discountCents; }
+    public long getTaxCents() { return taxCents; }
+    public long getTotalCents() { return totalCents; }
+    public int getDiscountBasisPoints() { return discountBasisPoints; }
+    public int getTaxBasisPoints() { return taxBasisPoints; }
+
+    public void setDiscountBasisPoints(int basisPoints) {
+        if (basisPoints < 0 || basisPoints > BASIS_POINTS) {
+            throw new IllegalArgumentException("Discount must be between 0 and " + BASIS_POINTS + " basis points");
+        }
+        discountBasisPoints = basisPoints;
+        reprice();
+    }
+
+    public void setTaxBasisPoints(int basisPoints) {
+        if (basisPoints < 0) {
+            throw new IllegalArgumentException("Tax cannot be negative");
+        }
+        taxBasisPoints = basisPoints;
+        reprice();
+    }
+
+    // Exact cents for a price such as 12.345 (rounded half up to 12.35)
+    public static long toCents(Double amount) {
+        if (amount == null || amount.isNaN() || amount.isInfinite()) {
+            throw new IllegalArgumentException("Price must be a finite number");
+        }
+        return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+    }
+
+    // ------------------- Internals -------------------
+
+    private void reprice() {
+        discountCents = percentOf(subtotalCents, discountBasisPoints);
+        long discounted = subtotalCents - discountCents;
+        taxCents = percentOf(discounted, taxBasisPoints);
+        totalCents = Math.max(0, discounted + taxCents);
+    }
+
+    // cents * basisPoints / 10000, rounded half up (half away from zero)
+    private static long percentOf(long cents, int basisPoints) {
+        long scaled = Math.multiplyExact(cents, (long) basisPoints);
+        long half = BASIS_POINTS / 2;
+        return scaled >= 0 ? (scaled + half) / BASIS_POINTS : -((-scaled + half) / BASIS_POINTS);
+    }
+
+    private long lineCents(int i) {
+        return unitCents[i] * quantities[i];
+    }
+
+    private int indexOf(int productId) {
+        int[] ids = productIds;
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == productId) return i;
+        }
+        return -1;
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Line " + i + " of " + size);
+        }
+        return i;
+    }
+
+    private void grow() {
+        int capacity = productIds.length * 2;
+        productIds = Arrays.copyOf(productIds, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        unitCents = Arrays.copyOf(unitCents, capacity);
+        items = Arrays.copyOf(items, capacity);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ Consecutive-failure circuit breaker. After failureThreshold failures in a
+ row the circuit opens and every call is rejected with CircuitOpenException
+ for openMillis. Then a single trial call is let through (half-open): if it
+ succeeds the circuit closes, if it fails the circuit opens again.
+*/
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private volatile int failureThreshold;
+    private volatile long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+    private long rejectedCount;
+    private long openedCount;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        configure(failureThreshold, openMillis);
+    }
+
+    public void configure(int failureThreshold, long openMillis) {
+        if (failureThreshold < 1 || openMillis < 1) {
+            throw new IllegalArgumentException("Failure threshold and open time must be positive");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openMillis * 1_000_000L;
+    }
+
+    // Call before each attempt; every permitted call must end in recordSuccess, recordFailure or releasePermission
+    public synchronized void acquirePermission() throws CircuitOpenException {
+        if (state == State.OPEN) {
+            long waited = System.nanoTime() - openedAt;
+            if (waited < openNanos) {
+                rejectedCount++;
+                throw new CircuitOpenException(name + " circuit is open after " + consecutiveFailures
+                    + " consecutive failures", (openNanos - waited) / 1_000_000L);
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                rejectedCount++;
+                throw new CircuitOpenException(name + " circuit is half-open and a trial call is in flight", 0);
+            }
+            trialInFlight = true;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) openedCount++;
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    // Ends a permitted call that says nothing about backend health (e.g. interrupted)
+    public synchronized void releasePermission() {
+        trialInFlight = false;
+    }
+
+    public synchronized void reset() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized long getRejectedCount() { return rejectedCount; }
+    public synchronized long getOpenedCount() { return openedCount; }
+}
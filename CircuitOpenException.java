@@ -0,0 +1,18 @@
+import java.io.IOException;
+
+// Thrown instead of sending a request while the Supabase circuit breaker is open
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    public CircuitOpenException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    // Time until the breaker lets a trial request through
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,13 @@
+import java.util.List;
+
+// Prints each notification to stdout (the original DeliveryManager behaviour)
+public class ConsoleNotificationSink implements NotificationSink {
+    @Override
+    public void deliver(List<Notification> batch) {
+        StringBuilder sb = new StringBuilder();
+        for (Notification n : batch) {
+            sb.append(n).append('\n');
+        }
+        System.out.print(sb);
+    }
+}
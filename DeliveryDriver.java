@@ -3,9 +3,18 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.net.http.HttpResponse;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 public class DeliveryDriver {
     private String driverId;
@@ -13,8 +22,45 @@ public class DeliveryDriver {
     private String contactNumber;
     private String licenseNumber;
     private String vehicleInfo;
-    private List<DeliveryJob> assignedJobs;
-    private boolean isAvailable;
+    // Assigned jobs indexed by (delivery time, jobId); unscheduled jobs sort last
+    private NavigableMap<ScheduleKey, DeliveryJob> schedule;
+    private Map<String, ScheduleKey> scheduleKeys;
+    private volatile boolean isAvailable;
+    private volatile DriverCapacityLedger capacityLedger;
+    // Manager the driver is registered with; availability changes are journaled through it
+    private volatile DeliveryManager owner;
+
+    private static final MessageTemplate<DeliveryDriver> SUMMARY_TEMPLATE = MessageTemplate.compile(
+        "{name} ({driverId}) - {availability} | {vehicle}",
+        Map.of(
+            "name", (sb, d) -> sb.append(d.name),
+            "driverId", (sb, d) -> sb.append(d.driverId),
+            "availability", (sb, d) -> sb.append(d.isAvailable ? "Available" : "Unavailable"),
+            "vehicle", (sb, d) -> sb.append(d.vehicleInfo)));
+
+    private static final MessageTemplate<DeliveryDriver> DETAILS_TEMPLATE = MessageTemplate.compile(
+        "=== Driver Details ===\n" +
+        "Name: {name}\n" +
+        "ID: {driverId}\n" +
+        "Contact: {contact}\n" +
+        "License: {license}\n" +
+        "Vehicle: {vehicle}\n" +
+        "Status: {availability}\n" +
+        "Assigned Jobs: {jobCount}\n",
+        Map.of(
+            "name", (sb, d) -> sb.append(d.name),
+            "driverId", (sb, d) -> sb.append(d.driverId),
+            "contact", (sb, d) -> sb.append(d.contactNumber),
+            "license", (sb, d) -> sb.append(d.licenseNumber),
+            "vehicle", (sb, d) -> sb.append(d.vehicleInfo),
+            "availability", (sb, d) -> sb.append(d.isAvailable ? "Available" : "Unavailable"),
+            "jobCount", (sb, d) -> sb.append(d.schedule.size())));
+
+    private static final MessageTemplate<DeliveryJob> JOB_LINE_TEMPLATE = MessageTemplate.compile(
+        "- {jobId} | {status}\n",
+        Map.of(
+            "jobId", (sb, j) -> sb.append(j.getJobId()),
+            "status", (sb, j) -> sb.append(j.getStatus())));
 
     public DeliveryDriver(String driverId, String name, String contactNumber, 
                          String licenseNumber, String vehicleInfo) {
@@ -30,8 +76,10 @@ public class DeliveryDriver {
         this.contactNumber = contactNumber != null ? contactNumber.trim() : "";
         this.licenseNumber = licenseNumber != null ? licenseNumber.trim() : "";
         this.vehicleInfo = vehicleInfo != null ? vehicleInfo.trim() : "";
-        this.assignedJobs = new ArrayList<>();
+        this.schedule = new ConcurrentSkipListMap<>();
+        this.scheduleKeys = new ConcurrentHashMap<>();
         this.isAvailable = true;
+        this.capacityLedger = new DriverCapacityLedger();
     }
 
     // Getters
@@ -41,7 +89,7 @@ public class DeliveryDriver {
     public String getLicenseNumber() { return licenseNumber; }
     public String getVehicleInfo() { return vehicleInfo; }
     public boolean isAvailable() { return isAvailable; }
-    public List<DeliveryJob> getAssignedJobs() { return new ArrayList<>(assignedJobs); }
+    public List<DeliveryJob> getAssignedJobs() { return new ArrayList<>(schedule.values()); }
 
     // Setters with validation
     public void setName(String name) { 
@@ -62,8 +110,28 @@ public class DeliveryDriver {
         this.vehicleInfo = vehicleInfo != null ? vehicleInfo.trim() : "";
     }
 
-    public void setAvailable(boolean available) { 
-        this.isAvailable = available; 
+    public synchronized void setAvailable(boolean available) {
+        if (isAvailable == available) return;
+        this.isAvailable = available;
+        DeliveryManager m = owner;
+        if (m != null) m.recordAvailability(this, available);
+    }
+
+    void setOwner(DeliveryManager manager) {
+        this.owner = manager;
+    }
+
+    // Shares the manager's ledger so both sides check the same counters and limit
+    void useCapacityLedger(DriverCapacityLedger ledger) {
+        if (ledger == null || ledger == capacityLedger) return;
+        for (DeliveryJob job : schedule.values()) {
+            if (job.getDeliveryDate() != null && DriverCapacityLedger.isActive(job.getStatus())) {
+                LocalDate day = job.getDeliveryDate().toLocalDate();
+                capacityLedger.releaseAssignment(driverId, day);
+                ledger.recordAssignment(driverId, day);
+            }
+        }
+        this.capacityLedger = ledger;
     }
 
     // Business logic methods
@@ -71,15 +139,11 @@ public class DeliveryDriver {
         if (!isAvailable) {
             return false;
         }
-        
-        long jobsOnDate = assignedJobs.stream()
-            .filter(job -> job.getDeliveryDate() != null 
-                    && job.getDeliveryDate().toLocalDate().equals(deliveryDate)
-                    && (job.getStatus() == DeliveryJob.DeliveryStatus.ASSIGNED 
-                        || job.getStatus() == DeliveryJob.DeliveryStatus.IN_TRANSIT))
-            .count();
-            
-        return jobsOnDate < 3; // Maximum 3 jobs per day
+        return capacityLedger.hasCapacity(driverId, deliveryDate);
+    }
+
+    public int getRemainingCapacity(LocalDate deliveryDate) {
+        return isAvailable ? capacityLedger.getRemainingCapacity(driverId, deliveryDate) : 0;
     }
 
     public boolean assignJob(DeliveryJob job) {
@@ -87,89 +151,280 @@ public class DeliveryDriver {
             return false;
         }
 
-        if (job.getDeliveryDate() != null && 
-            !canAcceptJob(job.getDeliveryDate().toLocalDate())) {
+        synchronized (job) {
+            if (driverId.equals(job.getAssignedDriverId()) && DriverCapacityLedger.isActive(job.getStatus())) {
+                return false; // already on this driver's books
+            }
+
+            LocalDate day = job.getDeliveryDate() != null ? job.getDeliveryDate().toLocalDate() : null;
+            if (day != null && !capacityLedger.tryReserve(driverId, day)) {
+                return false;
+            }
+
+            if (job.assignDriver(driverId)) {
+                indexJob(job);
+                return true;
+            }
+            if (day != null) {
+                capacityLedger.releaseAssignment(driverId, day);
+            }
             return false;
         }
+    }
+
+    // Drops a job that has been handed to another driver; the caller frees its ledger slot
+    boolean releaseJob(DeliveryJob job) {
+        if (job == null) return false;
+        ScheduleKey key = scheduleKeys.remove(job.getJobId());
+        return key != null && schedule.remove(key) != null;
+    }
+
+    // Re-keys a job after its delivery time changed; callers hold the job's monitor
+    void indexJob(DeliveryJob job) {
+        ScheduleKey old = scheduleKeys.get(job.getJobId());
+        if (old != null) {
+            schedule.remove(old);
+        }
+        ScheduleKey key = new ScheduleKey(
+            job.getDeliveryDate() != null ? job.getDeliveryDate() : LocalDateTime.MAX, job.getJobId());
+        scheduleKeys.put(job.getJobId(), key);
+        schedule.put(key, job);
+    }
+
+    // ------------------- Schedule queries -------------------
+    public List<DeliveryJob> getSchedule(LocalDate date) {
+        return getSchedule(date.atStartOfDay(), date.plusDays(1).atStartOfDay());
+    }
+
+    // Jobs with delivery time in [from, to), in time order
+    public List<DeliveryJob> getSchedule(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null || !from.isBefore(to)) return new ArrayList<>();
+        return new ArrayList<>(window(from, to).values());
+    }
 
-        if (job.assignDriver(driverId)) {
-            assignedJobs.add(job);
-            return true;
+    // Earliest ASSIGNED / IN_TRANSIT job scheduled at or after the given time
+    public Optional<DeliveryJob> getNextJob(LocalDateTime after) {
+        if (after == null) return Optional.empty();
+        for (DeliveryJob job : schedule.tailMap(new ScheduleKey(after, ""), true).values()) {
+            if (job.getDeliveryDate() != null && DriverCapacityLedger.isActive(job.getStatus())) {
+                return Optional.of(job);
+            }
+        }
+        return Optional.empty();
+    }
+
+    // True when no ASSIGNED / IN_TRANSIT job falls in [from, to)
+    public boolean isFreeBetween(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null || !from.isBefore(to)) return true;
+        for (DeliveryJob job : window(from, to).values()) {
+            if (DriverCapacityLedger.isActive(job.getStatus())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private NavigableMap<ScheduleKey, DeliveryJob> window(LocalDateTime from, LocalDateTime to) {
+        return schedule.subMap(new ScheduleKey(from, ""), true, new ScheduleKey(to, ""), false);
+    }
+
+    private static final class ScheduleKey implements Comparable<ScheduleKey> {
+        final LocalDateTime time;
+        final String jobId;
+
+        ScheduleKey(LocalDateTime time, String jobId) {
+            this.time = time;
+            this.jobId = jobId;
+        }
+
+        @Override
+        public int compareTo(ScheduleKey other) {
+            int byTime = time.compareTo(other.time);
+            return byTime != 0 ? byTime : jobId.compareTo(other.jobId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ScheduleKey)) return false;
+            ScheduleKey that = (ScheduleKey) o;
+            return time.equals(that.time) && jobId.equals(that.jobId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(time, jobId);
         }
-        return false;
     }
 
     // ------------------- Supabase helpers / JSON -------------------
     // Note: ensure Supabase table "delivery_drivers" has columns:
     // driver_id, name, contact_number, license_number, vehicle_info, is_available
     public String toJson() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        sb.append("\"driver_id\":\"").append(escapeJson(driverId)).append("\",");
-        sb.append("\"name\":\"").append(escapeJson(name)).append("\",");
-        sb.append("\"contact_number\":\"").append(escapeJson(contactNumber)).append("\",");
-        sb.append("\"license_number\":\"").append(escapeJson(licenseNumber)).append("\",");
-        sb.append("\"vehicle_info\":\"").append(escapeJson(vehicleInfo)).append("\",");
-        sb.append("\"is_available\":").append(isAvailable);
-        sb.append("}");
-        return sb.toString();
+        JsonWriter out = new JsonWriter(256);
+        writeJson(out);
+        return out.toString();
+    }
+
+    public void writeJson(JsonWriter out) {
+        out.beginObject();
+        out.name("driver_id").value(driverId);
+        out.name("name").value(name);
+        out.name("contact_number").value(contactNumber);
+        out.name("license_number").value(licenseNumber);
+        out.name("vehicle_info").value(vehicleInfo);
+        out.name("is_available").value(isAvailable);
+        out.endObject();
     }
 
-    private static String escapeJson(String s) {
-        if (s == null) return "";
-        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    // Read-through cache in front of fetchFromSupabase; same rules as DeliveryJob's
+    public static final int FETCH_CACHE_SIZE = 2_000;
+    public static final long FETCH_CACHE_TTL_MILLIS = 60_000;
+    private static final LruCache<String, DeliveryDriver> FETCH_CACHE = new LruCache<>(FETCH_CACHE_SIZE, FETCH_CACHE_TTL_MILLIS);
+
+    public static LruCache<String, DeliveryDriver> getFetchCache() {
+        return FETCH_CACHE;
     }
 
+    // Caches copies parsed from the rows that were sent, never the live objects, which keep changing
+    private static void updateFetchCache(Collection<DeliveryDriver> drivers, String sent, boolean saved) {
+        if (saved) {
+            for (DeliveryDriver stored : fromJsonArray(sent)) {
+                FETCH_CACHE.put(stored.driverId, stored);
+            }
+        } else {
+            for (DeliveryDriver driver : drivers) {
+                FETCH_CACHE.remove(driver.driverId);
+            }
+        }
+    }
+
+    // The write-behind reports each queued row once it is stored or dropped
+    private static final SupabaseWriteBehind.RowListener CACHE_ON_WRITE = new SupabaseWriteBehind.RowListener() {
+        @Override
+        public void written(String key, String rowJson) {
+            DeliveryDriver stored = JsonReader.readObject(rowJson, DeliveryDriver::readRow);
+            if (stored != null) {
+                FETCH_CACHE.put(key, stored);
+            } else {
+                FETCH_CACHE.remove(key);
+            }
+        }
+
+        @Override
+        public void dropped(String key) {
+            FETCH_CACHE.remove(key);
+        }
+    };
+
     public boolean saveToSupabase() throws IOException, InterruptedException {
-        String body = "[" + toJson() + "]";
-        HttpResponse<String> resp = SupabaseClient.postUpsert("delivery_drivers", body, "driver_id", null);
-        return resp.statusCode() >= 200 && resp.statusCode() < 300;
+        return saveAllToSupabase(List.of(this));
+    }
+
+    // Upserts all drivers in one multi-row request
+    public static boolean saveAllToSupabase(Collection<DeliveryDriver> drivers) throws IOException, InterruptedException {
+        if (drivers.isEmpty()) return true;
+        JsonWriter body = JsonWriter.forThread().array(drivers, DeliveryDriver::writeJson);
+        String sent = body.toString();
+        HttpResponse<String> resp;
+        try {
+            resp = SupabaseClient.postUpsert("delivery_drivers", body, "driver_id", null);
+        } catch (IOException | RuntimeException e) {
+            updateFetchCache(drivers, sent, false);
+            throw e;
+        }
+        boolean saved = resp.statusCode() >= 200 && resp.statusCode() < 300;
+        updateFetchCache(drivers, sent, saved);
+        return saved;
+    }
+
+    public CompletableFuture<Boolean> saveToSupabaseAsync() {
+        JsonWriter body = JsonWriter.forThread().array(List.of(this), DeliveryDriver::writeJson);
+        String sent = body.toString();
+        return SupabaseClient.postUpsertAsync("delivery_drivers", body, "driver_id", null)
+            .handle((resp, err) -> {
+                boolean saved = err == null && resp.statusCode() >= 200 && resp.statusCode() < 300;
+                updateFetchCache(List.of(this), sent, saved);
+                if (err != null) throw new CompletionException(err);
+                return saved;
+            });
+    }
+
+    // Write-behind variant: coalesced with other queued driver rows into one multi-row upsert
+    public void queueSave() {
+        SupabaseWriteBehind.shared().enqueue("delivery_drivers", "driver_id", driverId, toJson(), CACHE_ON_WRITE);
+        // a cached copy is older than the queued row; the row is cached once it is stored
+        FETCH_CACHE.remove(driverId);
     }
 
     public static DeliveryDriver fetchFromSupabase(String driverId) throws IOException, InterruptedException {
-        String encodedId = URLEncoder.encode(driverId, StandardCharsets.UTF_8);
-        String query = "delivery_drivers?select=*&driver_id=eq." + encodedId;
+        return FETCH_CACHE.get(driverId, id -> fromFetchResponse(id, SupabaseClient.get(fetchQuery(id), null)));
+    }
+
+    // Completes with null when the driver does not exist, like fetchFromSupabase
+    public static CompletableFuture<DeliveryDriver> fetchFromSupabaseAsync(String driverId) {
+        DeliveryDriver cached = FETCH_CACHE.get(driverId);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        return SupabaseClient.getAsync(fetchQuery(driverId), null)
+            .thenApply(resp -> {
+                DeliveryDriver driver = fromFetchResponse(driverId, resp);
+                return driver != null ? FETCH_CACHE.putIfAbsent(driverId, driver) : null;
+            });
+    }
+
+    private static String fetchQuery(String driverId) {
+        return "delivery_drivers?select=*&driver_id=eq." + URLEncoder.encode(driverId, StandardCharsets.UTF_8);
+    }
+
+    // Drivers matching a PostgREST filter such as "is_available=eq.true"; empty for all drivers
+    public static List<DeliveryDriver> fetchListFromSupabase(String filterQuery) throws IOException, InterruptedException {
+        String query = "delivery_drivers?select=*";
+        if (filterQuery != null && !filterQuery.isEmpty()) query += "&" + filterQuery;
         HttpResponse<String> resp = SupabaseClient.get(query, null);
         if (resp.statusCode() >= 200 && resp.statusCode() < 300) {
-            String body = resp.body();
-            if (body != null && body.trim().startsWith("[") && body.trim().length() > 2) {
-                String obj = body.trim();
-                obj = obj.substring(1, obj.length()-1).trim();
-                String nameVal = extractJsonString(obj, "name");
-                String contactVal = extractJsonString(obj, "contact_number");
-                String licenseVal = extractJsonString(obj, "license_number");
-                String vehicleVal = extractJsonString(obj, "vehicle_info");
-                String isAvailableVal = extractJsonString(obj, "is_available");
-                DeliveryDriver d = new DeliveryDriver(driverId, nameVal, contactVal, licenseVal, vehicleVal);
-                boolean available = "true".equalsIgnoreCase(isAvailableVal) || "1".equals(isAvailableVal);
-                d.setAvailable(available);
-                return d;
-            }
+            return fromJsonArray(resp.body());
+        }
+        return new ArrayList<>();
+    }
+
+    public static List<DeliveryDriver> fromJsonArray(String json) {
+        return JsonReader.readArray(json, DeliveryDriver::readRow);
+    }
+
+    private static DeliveryDriver fromFetchResponse(String driverId, HttpResponse<String> resp) {
+        if (resp.statusCode() >= 200 && resp.statusCode() < 300) {
+            return JsonReader.readFirst(resp.body(), DeliveryDriver::readRow);
         }
         return null;
     }
 
-    private static String extractJsonString(String json, String key) {
-        String look = "\"" + key + "\"";
-        int idx = json.indexOf(look);
-        if (idx == -1) return "";
-        int colon = json.indexOf(":", idx + look.length());
-        if (colon == -1) return "";
-        int start = json.indexOf("\"", colon);
-        if (start == -1) {
-            int end = json.indexOf(",", colon);
-            if (end == -1) end = json.length();
-            return json.substring(colon+1, end).trim().replaceAll("[,\\s\"]", "");
+    // One delivery_drivers row; rows without an id or name are skipped
+    static DeliveryDriver readRow(JsonReader reader) {
+        String id = null, nameVal = null, contactVal = null, licenseVal = null, vehicleVal = null;
+        boolean available = false;
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "driver_id": id = reader.nextString(); break;
+                case "name": nameVal = reader.nextString(); break;
+                case "contact_number": contactVal = reader.nextString(); break;
+                case "license_number": licenseVal = reader.nextString(); break;
+                case "vehicle_info": vehicleVal = reader.nextString(); break;
+                case "is_available": available = reader.nextBoolean(); break;
+                default: reader.skipValue();
+            }
         }
-        int end = json.indexOf("\"", start + 1);
-        if (end == -1) return "";
-        return json.substring(start + 1, end);
+        if (id == null || id.trim().isEmpty() || nameVal == null || nameVal.trim().isEmpty()) return null;
+        DeliveryDriver d = new DeliveryDriver(id, nameVal, contactVal, licenseVal, vehicleVal);
+        d.setAvailable(available);
+        return d;
     }
 
     public boolean deleteFromSupabase() throws IOException, InterruptedException {
         // Delete any delivery_jobs that reference this driver first to avoid FK constraint violations
         String encodedId = URLEncoder.encode(driverId, StandardCharsets.UTF_8);
         String jobsQuery = "delivery_jobs?assigned_driver_id=eq." + encodedId;
+        DeliveryJob.evictCachedJobsForDriver(driverId);
+        FETCH_CACHE.remove(driverId);
         try {
             HttpResponse<String> respJobs = SupabaseClient.delete(jobsQuery, null);
             // allow deletion to proceed even if no jobs existed; logging is handled by SupabaseClient
@@ -197,33 +452,20 @@ public class DeliveryDriver {
 
     @Override
     public String toString() {
-        return String.format("%s (%s) - %s | %s", 
-            name, 
-            driverId,
-            isAvailable ? "Available" : "Unavailable",
-            vehicleInfo);
+        return SUMMARY_TEMPLATE.render(this);
     }
 
     public String getDetailedInfo() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("=== Driver Details ===\n");
-        sb.append(String.format("Name: %s\n", name));
-        sb.append(String.format("ID: %s\n", driverId));
-        sb.append(String.format("Contact: %s\n", contactNumber));
-        sb.append(String.format("License: %s\n", licenseNumber));
-        sb.append(String.format("Vehicle: %s\n", vehicleInfo));
-        sb.append(String.format("Status: %s\n", isAvailable ? "Available" : "Unavailable"));
-        sb.append(String.format("Assigned Jobs: %d\n", assignedJobs.size()));
-        
-        if (!assignedJobs.isEmpty()) {
+        StringBuilder sb = new StringBuilder(256);
+        DETAILS_TEMPLATE.renderTo(sb, this);
+
+        if (!schedule.isEmpty()) {
             sb.append("\n--- Assigned Jobs ---\n");
-            for (DeliveryJob job : assignedJobs) {
-                sb.append(String.format("- %s | %s\n", 
-                    job.getJobId(), 
-                    job.getStatus()));
+            for (DeliveryJob job : schedule.values()) {
+                JOB_LINE_TEMPLATE.renderTo(sb, job);
             }
         }
-        
+
         sb.append("======================");
         return sb.toString();
     }
@@ -8,22 +8,96 @@ import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class DeliveryJob {
+    public static final String JOB_ID_PREFIX = "JOB-";
+
     private String jobId;
     private String customerName;
     private String deliveryAddress;
     private String goodsDescription;
     private LocalDateTime createdDate;
     private LocalDateTime deliveryDate;
-    private String assignedDriverId;
+    private volatile String assignedDriverId;
     private double totalAmount;
     private double amountPaid;
-    private DeliveryStatus status;
+    private volatile DeliveryStatus status;
+    // Set once a DeliveryManager indexes the job; its date then only changes through rescheduleJob
+    private DeliveryManager owner;
 
     public enum DeliveryStatus {
-        PENDING, CONFIRMED, ASSIGNED, IN_TRANSIT, DELIVERED, CANCELLED
+        PENDING, CONFIRMED, ASSIGNED, IN_TRANSIT, DELIVERED, CANCELLED;
+
+        // Allowed lifecycle moves; staying in the same status is always allowed.
+        // DELIVERED and CANCELLED are terminal.
+        public boolean canTransitionTo(DeliveryStatus next) {
+            if (next == null) return false;
+            if (next == this) return true;
+            switch (this) {
+                case PENDING:
+                    return next == CONFIRMED || next == ASSIGNED || next == CANCELLED;
+                case CONFIRMED:
+                    return next == PENDING || next == ASSIGNED || next == CANCELLED;
+                case ASSIGNED:
+                    return next == PENDING || next == CONFIRMED || next == IN_TRANSIT || next == CANCELLED;
+                case IN_TRANSIT:
+                    return next == ASSIGNED || next == DELIVERED || next == CANCELLED;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    // Display templates are compiled once and shared by every job
+    private static final MessageTemplate<DeliveryJob> SUMMARY_TEMPLATE = MessageTemplate.compile(
+        "{jobId} - {customer} | {delivery} | {status} | ${total}",
+        Map.of(
+            "jobId", (sb, j) -> sb.append(j.jobId),
+            "customer", (sb, j) -> sb.append(j.customerName),
+            "delivery", (sb, j) -> MessageTemplate.appendDateTime(sb, j.deliveryDate, "Not scheduled"),
+            "status", (sb, j) -> sb.append(j.status),
+            "total", (sb, j) -> MessageTemplate.appendMoney(sb, j.totalAmount)));
+
+    private static final MessageTemplate<DeliveryJob> DETAILS_TEMPLATE = MessageTemplate.compile(
+        "=== Delivery Job Details ===\n" +
+        "Job ID: {jobId}\n" +
+        "Customer: {customer}\n" +
+        "Address: {address}\n" +
+        "Goods: {goods}\n" +
+        "Total Amount: ${total}\n" +
+        "Amount Paid: ${paid}\n" +
+        "Balance Due: ${balance}\n" +
+        "Status: {status}\n" +
+        "Assigned Driver: {driver}\n" +
+        "Created: {created}\n" +
+        "Scheduled Delivery: {delivery}\n" +
+        "==========================",
+        Map.ofEntries(
+            Map.<String, MessageTemplate.Binding<DeliveryJob>>entry("jobId", (sb, j) -> sb.append(j.jobId)),
+            Map.entry("customer", (sb, j) -> sb.append(j.customerName)),
+            Map.entry("address", (sb, j) -> sb.append(j.deliveryAddress)),
+            Map.entry("goods", (sb, j) -> sb.append(j.goodsDescription)),
+            Map.entry("total", (sb, j) -> MessageTemplate.appendMoney(sb, j.totalAmount)),
+            Map.entry("paid", (sb, j) -> MessageTemplate.appendMoney(sb, j.amountPaid)),
+            Map.entry("balance", (sb, j) -> MessageTemplate.appendMoney(sb, j.getBalanceDue())),
+            Map.entry("status", (sb, j) -> sb.append(j.status)),
+            Map.entry("driver", (sb, j) -> sb.append(j.assignedDriverId != null ? j.assignedDriverId : "Not assigned")),
+            Map.entry("created", (sb, j) -> MessageTemplate.appendDateTime(sb, j.createdDate, "Not recorded")),
+            Map.entry("delivery", (sb, j) -> MessageTemplate.appendDateTime(sb, j.deliveryDate, "Not scheduled"))));
+
+    // New job with a generated, time-ordered id such as "JOB-01HV3K8Q2M0A1" (see IdGenerator)
+    public DeliveryJob(String customerName, String deliveryAddress, String goodsDescription,
+                      double totalAmount, double amountPaid) {
+        this(IdGenerator.shared().nextString(JOB_ID_PREFIX), customerName, deliveryAddress,
+            goodsDescription, totalAmount, amountPaid);
     }
 
     public DeliveryJob(String jobId, String customerName, String deliveryAddress, 
@@ -51,14 +125,19 @@ public class DeliveryJob {
     public DeliveryStatus getStatus() { return status; }
     public double getBalanceDue() { return totalAmount - amountPaid; }
 
-    public void setDeliveryDate(LocalDateTime deliveryDate) {
+    // For jobs not yet handed to a DeliveryManager; a managed job is moved with
+    // DeliveryManager.rescheduleJob, which keeps its indexes and driver capacity in step
+    public synchronized void setDeliveryDate(LocalDateTime deliveryDate) {
+        if (owner != null) {
+            throw new IllegalStateException("Job " + jobId + " is managed; use DeliveryManager.rescheduleJob");
+        }
         if (deliveryDate != null && !deliveryDate.isBefore(LocalDateTime.now())) {
             this.deliveryDate = deliveryDate;
         }
     }
 
-    public boolean assignDriver(String driverId) {
-        if (driverId != null && !driverId.trim().isEmpty()) {
+    public synchronized boolean assignDriver(String driverId) {
+        if (driverId != null && !driverId.trim().isEmpty() && status.canTransitionTo(DeliveryStatus.ASSIGNED)) {
             this.assignedDriverId = driverId.trim();
             this.status = DeliveryStatus.ASSIGNED;
             return true;
@@ -66,10 +145,37 @@ public class DeliveryJob {
         return false;
     }
 
-    public void updateStatus(DeliveryStatus newStatus) {
-        if (newStatus != null) {
+    // Returns false (and leaves the job unchanged) for a transition the lifecycle does not allow
+    public synchronized boolean updateStatus(DeliveryStatus newStatus) {
+        if (newStatus != null && status.canTransitionTo(newStatus)) {
             this.status = newStatus;
+            return true;
         }
+        return false;
+    }
+
+    // Rebuilds a job exactly as recorded (journal replay / snapshots), bypassing
+    // the "delivery date must be in the future" rule and lifecycle checks
+    static DeliveryJob restore(String jobId, String customerName, String deliveryAddress,
+                               String goodsDescription, double totalAmount, double amountPaid,
+                               LocalDateTime createdDate, LocalDateTime deliveryDate,
+                               String assignedDriverId, DeliveryStatus status) {
+        DeliveryJob job = new DeliveryJob(jobId, customerName, deliveryAddress, goodsDescription,
+            totalAmount, amountPaid);
+        if (createdDate != null) job.createdDate = createdDate;
+        job.deliveryDate = deliveryDate;
+        job.assignedDriverId = assignedDriverId;
+        job.status = status != null ? status : DeliveryStatus.PENDING;
+        return job;
+    }
+
+    // Callers hold the job's monitor
+    void setOwner(DeliveryManager manager) {
+        this.owner = manager;
+    }
+
+    synchronized void restoreDeliveryDate(LocalDateTime deliveryDate) {
+        this.deliveryDate = deliveryDate;
     }
 
     public boolean isFullyPaid() {
@@ -78,35 +184,11 @@ public class DeliveryJob {
 
     @Override
     public String toString() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd, yyyy hh:mm a");
-        return String.format("%s - %s | %s | %s | $%.2f",
-                jobId,
-                customerName,
-                deliveryDate != null ? deliveryDate.format(formatter) : "Not scheduled",
-                status,
-                totalAmount);
+        return SUMMARY_TEMPLATE.render(this);
     }
 
     public String getDetailedInfo() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd, yyyy hh:mm a");
-        StringBuilder sb = new StringBuilder();
-        sb.append("=== Delivery Job Details ===\n");
-        sb.append(String.format("Job ID: %s\n", jobId));
-        sb.append(String.format("Customer: %s\n", customerName));
-        sb.append(String.format("Address: %s\n", deliveryAddress));
-        sb.append(String.format("Goods: %s\n", goodsDescription));
-        sb.append(String.format("Total Amount: $%.2f\n", totalAmount));
-        sb.append(String.format("Amount Paid: $%.2f\n", amountPaid));
-        sb.append(String.format("Balance Due: $%.2f\n", getBalanceDue()));
-        sb.append(String.format("Status: %s\n", status));
-        sb.append(String.format("Assigned Driver: %s\n", 
-            assignedDriverId != null ? assignedDriverId : "Not assigned"));
-        sb.append(String.format("Created: %s\n", createdDate.format(formatter)));
-        sb.append(String.format("Scheduled Delivery: %s\n", 
-            deliveryDate != null ? deliveryDate.format(formatter) : "Not scheduled"));
-        sb.append("==========================");
-        
-        return sb.toString();
+        return DETAILS_TEMPLATE.render(this);
     }
 
     // ------------------- Supabase helpers / JSON -------------------
@@ -114,163 +196,223 @@ public class DeliveryJob {
     // goods_description, created_date, delivery_date, assigned_driver_id,
     // total_amount, amount_paid, status
     public String toJson() {
-        DateTimeFormatter dtf = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        sb.append("\"job_id\":\"").append(escapeJson(jobId)).append("\",");
-        sb.append("\"customer_name\":\"").append(escapeJson(customerName)).append("\",");
-        sb.append("\"delivery_address\":\"").append(escapeJson(deliveryAddress)).append("\",");
-        sb.append("\"goods_description\":\"").append(escapeJson(goodsDescription)).append("\",");
-
-        // created_date as offset datetime (include system zone offset)
-        String created = "";
-        if (createdDate != null) {
-            created = OffsetDateTime.of(createdDate, ZoneId.systemDefault().getRules().getOffset(createdDate)).format(dtf);
-        }
-        sb.append("\"created_date\":").append(created.isEmpty() ? "null" : ("\"" + escapeJson(created) + "\"")).append(",");
+        JsonWriter out = new JsonWriter(512);
+        writeJson(out);
+        return out.toString();
+    }
+
+    public void writeJson(JsonWriter out) {
+        out.beginObject();
+        out.name("job_id").value(orEmpty(jobId));
+        out.name("customer_name").value(orEmpty(customerName));
+        out.name("delivery_address").value(orEmpty(deliveryAddress));
+        out.name("goods_description").value(orEmpty(goodsDescription));
+        // dates as offset datetimes in the system zone; null when not set
+        ZoneRules zone = ZoneId.systemDefault().getRules();
+        out.name("created_date").value(createdDate, createdDate != null ? zone.getOffset(createdDate) : null);
+        out.name("delivery_date").value(deliveryDate, deliveryDate != null ? zone.getOffset(deliveryDate) : null);
+        String driver = assignedDriverId;
+        out.name("assigned_driver_id").value(driver != null && !driver.isEmpty() ? driver : null);
+        out.name("total_amount").value(totalAmount);
+        out.name("amount_paid").value(amountPaid);
+        DeliveryStatus current = status;
+        out.name("status").value(current != null ? current.name() : "");
+        out.endObject();
+    }
+
+    /*
+     Read-through cache in front of fetchFromSupabase. A confirmed save caches
+     a copy parsed from the row that was sent, never the live job, so a fetch
+     right after a save is served from memory and later edits to the job do
+     not leak into it. queueSave drops the entry until the write-behind
+     reports the row stored; deleting the job, or a failed or dropped save,
+     drops it too. The TTL bounds how long changes made by other processes
+     can go unseen.
+    */
+    public static final int FETCH_CACHE_SIZE = 10_000;
+    public static final long FETCH_CACHE_TTL_MILLIS = 60_000;
+    private static final LruCache<String, DeliveryJob> FETCH_CACHE = new LruCache<>(FETCH_CACHE_SIZE, FETCH_CACHE_TTL_MILLIS);
+
+    public static LruCache<String, DeliveryJob> getFetchCache() {
+        return FETCH_CACHE;
+    }
+
+    // Drops cached jobs assigned to a driver, e.g. after the driver's jobs were deleted
+    static void evictCachedJobsForDriver(String driverId) {
+        FETCH_CACHE.removeIf(job -> driverId.equals(job.assignedDriverId));
+    }
 
-        // delivery_date: emit null if not set, otherwise offset datetime string
-        if (deliveryDate != null) {
-            String delivery = OffsetDateTime.of(deliveryDate, ZoneId.systemDefault().getRules().getOffset(deliveryDate)).format(dtf);
-            sb.append("\"delivery_date\":\"").append(escapeJson(delivery)).append("\",");
+    // Caches copies parsed from the rows that were sent, never the live objects, which keep changing
+    private static void updateFetchCache(Collection<DeliveryJob> jobs, String sent, boolean saved) {
+        if (saved) {
+            for (DeliveryJob stored : fromJsonArray(sent)) {
+                FETCH_CACHE.put(stored.jobId, stored);
+            }
         } else {
-            sb.append("\"delivery_date\":null,");
+            for (DeliveryJob job : jobs) {
+                FETCH_CACHE.remove(job.jobId);
+            }
         }
+    }
 
-        // assigned_driver_id: null if not assigned
-        if (assignedDriverId != null && !assignedDriverId.isEmpty()) {
-            sb.append("\"assigned_driver_id\":\"").append(escapeJson(assignedDriverId)).append("\",");
-        } else {
-            sb.append("\"assigned_driver_id\":null,");
+    // The write-behind reports each queued row once it is stored or dropped
+    private static final SupabaseWriteBehind.RowListener CACHE_ON_WRITE = new SupabaseWriteBehind.RowListener() {
+        @Override
+        public void written(String key, String rowJson) {
+            DeliveryJob stored = JsonReader.readObject(rowJson, DeliveryJob::readRow);
+            if (stored != null) {
+                FETCH_CACHE.put(key, stored);
+            } else {
+                FETCH_CACHE.remove(key);
+            }
+        }
+
+        @Override
+        public void dropped(String key) {
+            FETCH_CACHE.remove(key);
         }
+    };
 
-        sb.append("\"total_amount\":").append(totalAmount).append(",");
-        sb.append("\"amount_paid\":").append(amountPaid).append(",");
-        sb.append("\"status\":\"").append(escapeJson(status != null ? status.name() : "")).append("\"");
-        sb.append("}");
-        return sb.toString();
+    public boolean saveToSupabase() throws IOException, InterruptedException {
+        return saveAllToSupabase(List.of(this));
     }
 
-    private static String escapeJson(String s) {
-        if (s == null) return "";
-        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    // Upserts all jobs in one multi-row request
+    public static boolean saveAllToSupabase(Collection<DeliveryJob> jobs) throws IOException, InterruptedException {
+        if (jobs.isEmpty()) return true;
+        JsonWriter body = JsonWriter.forThread().array(jobs, DeliveryJob::writeJson);
+        String sent = body.toString();
+        HttpResponse<String> resp;
+        try {
+            resp = SupabaseClient.postUpsert("delivery_jobs", body, "job_id", null);
+        } catch (IOException | RuntimeException e) {
+            updateFetchCache(jobs, sent, false);
+            throw e;
+        }
+        boolean saved = resp.statusCode() >= 200 && resp.statusCode() < 300;
+        updateFetchCache(jobs, sent, saved);
+        return saved;
     }
 
-    public boolean saveToSupabase() throws IOException, InterruptedException {
-        String body = "[" + toJson() + "]";
-        HttpResponse<String> resp = SupabaseClient.postUpsert("delivery_jobs", body, "job_id", null);
-        return resp.statusCode() >= 200 && resp.statusCode() < 300;
+    public CompletableFuture<Boolean> saveToSupabaseAsync() {
+        JsonWriter body = JsonWriter.forThread().array(List.of(this), DeliveryJob::writeJson);
+        String sent = body.toString();
+        return SupabaseClient.postUpsertAsync("delivery_jobs", body, "job_id", null)
+            .handle((resp, err) -> {
+                boolean saved = err == null && resp.statusCode() >= 200 && resp.statusCode() < 300;
+                updateFetchCache(List.of(this), sent, saved);
+                if (err != null) throw new CompletionException(err);
+                return saved;
+            });
+    }
+
+    // Write-behind variant: coalesced with other queued job rows into one multi-row upsert
+    public void queueSave() {
+        SupabaseWriteBehind.shared().enqueue("delivery_jobs", "job_id", jobId, toJson(), CACHE_ON_WRITE);
+        // a cached copy is older than the queued row; the row is cached once it is stored
+        FETCH_CACHE.remove(jobId);
     }
 
     public static DeliveryJob fetchFromSupabase(String jobId) throws IOException, InterruptedException {
-        String encoded = URLEncoder.encode(jobId, StandardCharsets.UTF_8);
-        String query = "delivery_jobs?select=*&job_id=eq." + encoded;
+        return FETCH_CACHE.get(jobId, id -> fromFetchResponse(id, SupabaseClient.get(fetchQuery(id), null)));
+    }
+
+    // Completes with null when the job does not exist, like fetchFromSupabase
+    public static CompletableFuture<DeliveryJob> fetchFromSupabaseAsync(String jobId) {
+        DeliveryJob cached = FETCH_CACHE.get(jobId);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        return SupabaseClient.getAsync(fetchQuery(jobId), null)
+            .thenApply(resp -> {
+                DeliveryJob job = fromFetchResponse(jobId, resp);
+                return job != null ? FETCH_CACHE.putIfAbsent(jobId, job) : null;
+            });
+    }
+
+    private static String fetchQuery(String jobId) {
+        return "delivery_jobs?select=*&job_id=eq." + URLEncoder.encode(jobId, StandardCharsets.UTF_8);
+    }
+
+    // Jobs matching a PostgREST filter such as "status=eq.PENDING"; empty for all jobs
+    public static List<DeliveryJob> fetchListFromSupabase(String filterQuery) throws IOException, InterruptedException {
+        String query = "delivery_jobs?select=*";
+        if (filterQuery != null && !filterQuery.isEmpty()) query += "&" + filterQuery;
         HttpResponse<String> resp = SupabaseClient.get(query, null);
         if (resp.statusCode() >= 200 && resp.statusCode() < 300) {
-            String body = resp.body();
-            if (body != null && body.trim().startsWith("[") && body.trim().length() > 2) {
-                String obj = body.trim();
-                obj = obj.substring(1, obj.length()-1).trim();
-
-                // Use raw extractor for numbers/dates (handles quoted or unquoted tokens)
-                String customer = extractJsonRaw(obj, "customer_name");
-                String address = extractJsonRaw(obj, "delivery_address");
-                String goods = extractJsonRaw(obj, "goods_description");
-
-                double total = parseDoubleSafe(extractJsonRaw(obj, "total_amount"));
-                double paid  = parseDoubleSafe(extractJsonRaw(obj, "amount_paid"));
-
-                String createdStr = extractJsonRaw(obj, "created_date");
-                String deliveryDateStr = extractJsonRaw(obj, "delivery_date");
-
-                DeliveryJob j = new DeliveryJob(jobId, customer, address, goods, total, paid);
-
-                // parse created_date if provided
-                if (createdStr != null && !createdStr.isEmpty() && !"null".equalsIgnoreCase(createdStr)) {
-                    try {
-                        // try offset first
-                        OffsetDateTime odt = OffsetDateTime.parse(createdStr, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-                        j.createdDate = odt.toLocalDateTime();
-                    } catch (DateTimeParseException e1) {
-                        try {
-                            j.createdDate = LocalDateTime.parse(createdStr, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                        } catch (Exception ignored) {}
-                    }
-                }
-
-                // parse and set delivery date if present
-                if (deliveryDateStr != null && !deliveryDateStr.isEmpty() && !"null".equalsIgnoreCase(deliveryDateStr)) {
-                    try {
-                        // try offset first
-                        OffsetDateTime odt = OffsetDateTime.parse(deliveryDateStr, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-                        j.setDeliveryDate(odt.toLocalDateTime());
-                    } catch (DateTimeParseException e1) {
-                        try {
-                            j.setDeliveryDate(LocalDateTime.parse(deliveryDateStr, DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-                        } catch (Exception ignored) {}
-                    }
-                }
-
-                String assigned = extractJsonRaw(obj, "assigned_driver_id");
-                if (assigned != null && !assigned.isEmpty() && !"null".equalsIgnoreCase(assigned)) j.assignDriver(assigned);
-                return j;
-            }
+            return fromJsonArray(resp.body());
+        }
+        return new ArrayList<>();
+    }
+
+    public static List<DeliveryJob> fromJsonArray(String json) {
+        return JsonReader.readArray(json, DeliveryJob::readRow);
+    }
+
+    private static DeliveryJob fromFetchResponse(String jobId, HttpResponse<String> resp) {
+        if (resp.statusCode() >= 200 && resp.statusCode() < 300) {
+            return JsonReader.readFirst(resp.body(), DeliveryJob::readRow);
         }
         return null;
     }
 
-    // Helper: extract raw JSON token value for a key (handles quoted strings, numbers, null)
-    private static String extractJsonRaw(String json, String key) {
-        String look = "\"" + key + "\"";
-        int idx = json.indexOf(look);
-        if (idx == -1) return "";
-        int colon = json.indexOf(":", idx + look.length());
-        if (colon == -1) return "";
-        int i = colon + 1;
-        // skip whitespace
-        while (i < json.length() && Character.isWhitespace(json.charAt(i))) i++;
-        if (i >= json.length()) return "";
-        char c = json.charAt(i);
-        if (c == '"') {
-            int start = i + 1;
-            int end = json.indexOf('"', start);
-            if (end == -1) return json.substring(start).trim();
-            return json.substring(start, end);
-        } else {
-            int end = i;
-            while (end < json.length() && json.charAt(end) != ',' && json.charAt(end) != '}') end++;
-            return json.substring(i, end).trim();
+    // One delivery_jobs row, restored as stored (past delivery dates and status included)
+    static DeliveryJob readRow(JsonReader reader) {
+        String id = null, customer = null, address = null, goods = null, assigned = null, statusVal = null;
+        String createdStr = null, deliveryStr = null;
+        double total = 0.0, paid = 0.0;
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "job_id": id = reader.nextString(); break;
+                case "customer_name": customer = reader.nextString(); break;
+                case "delivery_address": address = reader.nextString(); break;
+                case "goods_description": goods = reader.nextString(); break;
+                case "total_amount": total = reader.nextDouble(0.0); break;
+                case "amount_paid": paid = reader.nextDouble(0.0); break;
+                case "created_date": createdStr = reader.nextString(); break;
+                case "delivery_date": deliveryStr = reader.nextString(); break;
+                case "assigned_driver_id": assigned = reader.nextString(); break;
+                case "status": statusVal = reader.nextString(); break;
+                default: reader.skipValue();
+            }
+        }
+        if (id == null || id.isEmpty()) return null;
+        if (assigned != null && assigned.isEmpty()) assigned = null;
+        DeliveryStatus status = parseStatus(statusVal, assigned != null ? DeliveryStatus.ASSIGNED : DeliveryStatus.PENDING);
+        return restore(id, orEmpty(customer), orEmpty(address), orEmpty(goods), total, paid,
+            parseTimestamp(createdStr), parseTimestamp(deliveryStr), assigned, status);
+    }
+
+    private static DeliveryStatus parseStatus(String s, DeliveryStatus fallback) {
+        if (s == null || s.isEmpty()) return fallback;
+        try {
+            return DeliveryStatus.valueOf(s.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+
+    // Accepts timestamptz (with offset) or plain local date-time text
+    static LocalDateTime parseTimestamp(String s) {
+        if (s == null || s.isEmpty()) return null;
+        try {
+            return OffsetDateTime.parse(s, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toLocalDateTime();
+        } catch (DateTimeParseException e1) {
+            try {
+                return LocalDateTime.parse(s, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            } catch (DateTimeParseException e2) {
+                return null;
+            }
         }
     }
 
+    private static String orEmpty(String s) {
+        return s != null ? s : "";
+    }
+
     public boolean deleteFromSupabase() throws IOException, InterruptedException {
         String encoded = URLEncoder.encode(jobId, StandardCharsets.UTF_8);
         String query = "delivery_jobs?job_id=eq." + encoded;
+        FETCH_CACHE.remove(jobId);
         HttpResponse<String> resp = SupabaseClient.delete(query, null);
         return resp.statusCode() >= 200 && resp.statusCode() < 300;
     }
-
-    private static double parseDoubleSafe(String s) {
-        try { 
-            if (s == null || s.isEmpty() || "null".equalsIgnoreCase(s)) return 0.0;
-            return Double.parseDouble(s);
-        } catch (Exception e) { return 0.0; }
-    }
-
-    private static String extractJsonString(String json, String key) {
-        String look = "\"" + key + "\"";
-        int idx = json.indexOf(look);
-        if (idx == -1) return "";
-        int colon = json.indexOf(":", idx + look.length());
-        if (colon == -1) return "";
-        int start = json.indexOf("\"", colon);
-        if (start == -1) {
-            int end = json.indexOf(",", colon);
-            if (end == -1) end = json.length();
-            return json.substring(colon+1, end).trim().replaceAll("[,\\s\"]", "");
-        }
-        int end = json.indexOf("\"", start + 1);
-        if (end == -1) return "";
-        return json.substring(start + 1, end);
-    }
 }
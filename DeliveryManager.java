@@ -1,62 +1,381 @@
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+/*
+ Safe for use by several dispatcher threads. Indexes are concurrent maps,
+ per-job state changes happen under the job's monitor, and driver capacity
+ is claimed with a CAS on the ledger counter, so a driver can never be
+ booked past the daily limit however many threads assign at once.
+*/
 public class DeliveryManager {
-    private List<DeliveryJob> deliveryJobs;
-    private List<DeliveryDriver> drivers;
-    private static final int MAX_JOBS_PER_DRIVER_PER_DAY = 3;
+    // Primary indexes; the queues keep creation order for listings
+    private Map<String, DeliveryJob> jobsById;
+    private Map<String, DeliveryDriver> driversById;
+    private Queue<DeliveryJob> jobsInOrder;
+    private Queue<DeliveryDriver> driversInOrder;
+    // Secondary indexes, kept in step with create/assign/updateStatus
+    private Map<DeliveryJob.DeliveryStatus, Set<DeliveryJob>> jobsByStatus;
+    private Map<LocalDate, Set<DeliveryJob>> jobsByDate;
+    // Normalized (customer, address, delivery day) -> jobId, used to reject duplicate jobs
+    private Map<String, String> duplicateIndex;
+    // Jobs not yet DELIVERED/CANCELLED ordered by (delivery time, creation sequence)
+    private ConcurrentSkipListMap<PendingKey, DeliveryJob> pendingJobs;
+    private Map<String, PendingKey> pendingKeys;
+    private Map<String, Long> creationSequence;
+    private final AtomicLong nextSequence = new AtomicLong();
+    // When set, notifications are queued instead of printed on the caller's thread
+    private volatile NotificationDispatcher notificationDispatcher;
+    // Optional append-only record of every job/driver change (see JobJournal)
+    private volatile JobJournal journal;
+    private static final NotificationSink INLINE_SINK = new ConsoleNotificationSink();
+
+    // Notification templates, compiled once
+    private static final MessageTemplate<DeliveryJob> ASSIGNMENT_TEMPLATE = MessageTemplate.compile(
+        "New delivery job assigned!\n" +
+        "Job ID: {jobId}\n" +
+        "Customer: {customer}\n" +
+        "Address: {address}\n" +
+        "Items: {goods}\n" +
+        "Scheduled: {delivery}\n" +
+        "Please acknowledge receipt of this assignment.",
+        Map.of(
+            "jobId", (sb, j) -> sb.append(j.getJobId()),
+            "customer", (sb, j) -> sb.append(j.getCustomerName()),
+            "address", (sb, j) -> sb.append(j.getDeliveryAddress()),
+            "goods", (sb, j) -> sb.append(j.getGoodsDescription()),
+            "delivery", (sb, j) -> MessageTemplate.appendDateTime(sb, j.getDeliveryDate(), "Not scheduled yet")));
+
+    private static final MessageTemplate<CustomerUpdate> CUSTOMER_UPDATE_TEMPLATE = MessageTemplate.compile(
+        "Delivery Update for Order {jobId}\n" +
+        "Status: {status}\n" +
+        "{message}\n" +
+        "Thank you for choosing our service!",
+        Map.of(
+            "jobId", (sb, u) -> sb.append(u.job.getJobId()),
+            "status", (sb, u) -> sb.append(u.job.getStatus()),
+            "message", (sb, u) -> sb.append(u.message)));
+    // Active jobs per (driver, day); also holds the per-day job limit
+    private final DriverCapacityLedger capacityLedger;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
 
     public DeliveryManager() {
-        this.deliveryJobs = new ArrayList<>();
-        this.drivers = new ArrayList<>();
+        this(DriverCapacityLedger.DEFAULT_MAX_JOBS_PER_DAY);
+    }
+
+    public DeliveryManager(int maxJobsPerDriverPerDay) {
+        this.capacityLedger = new DriverCapacityLedger(maxJobsPerDriverPerDay);
+        this.jobsById = new ConcurrentHashMap<>();
+        this.driversById = new ConcurrentHashMap<>();
+        this.jobsInOrder = new ConcurrentLinkedQueue<>();
+        this.driversInOrder = new ConcurrentLinkedQueue<>();
+        this.jobsByStatus = new EnumMap<>(DeliveryJob.DeliveryStatus.class);
+        for (DeliveryJob.DeliveryStatus status : DeliveryJob.DeliveryStatus.values()) {
+            jobsByStatus.put(status, ConcurrentHashMap.newKeySet());
+        }
+        this.jobsByDate = new ConcurrentHashMap<>();
+        this.duplicateIndex = new ConcurrentHashMap<>();
+        this.pendingJobs = new ConcurrentSkipListMap<>();
+        this.pendingKeys = new ConcurrentHashMap<>();
+        this.creationSequence = new ConcurrentHashMap<>();
     }
 
     // Job Management
     public boolean createDeliveryJob(DeliveryJob job) {
-        if (job == null || isDuplicateJob(job)) {
+        if (job == null || job.getJobId() == null || isDuplicateJob(job)) {
+            return false;
+        }
+        synchronized (job) {
+            if (jobsById.putIfAbsent(job.getJobId(), job) != null) {
+                return false;
+            }
+            String key = duplicateKey(job);
+            if (key != null && job.getStatus() != DeliveryJob.DeliveryStatus.CANCELLED
+                    && duplicateIndex.putIfAbsent(key, job.getJobId()) != null) {
+                jobsById.remove(job.getJobId(), job); // lost the race to an equivalent job
+                return false;
+            }
+            jobsInOrder.add(job);
+            creationSequence.put(job.getJobId(), nextSequence.getAndIncrement());
+            jobsByStatus.get(job.getStatus()).add(job);
+            LocalDate day = deliveryDay(job);
+            if (day != null) {
+                jobsByDate.computeIfAbsent(day, d -> ConcurrentHashMap.newKeySet()).add(job);
+            }
+            updatePending(job);
+            job.setOwner(this);
+            JobJournal j = journal;
+            if (j != null) j.recordJobCreated(job);
+        }
+        return true;
+    }
+
+    // Adds a job in whatever state it was recorded in (journal replay): indexes
+    // it, links it to its driver and charges the driver's capacity if active
+    boolean restoreJob(DeliveryJob job) {
+        if (!createDeliveryJob(job)) {
+            return false;
+        }
+        synchronized (job) {
+            DeliveryDriver driver = job.getAssignedDriverId() != null
+                ? driversById.get(job.getAssignedDriverId()) : null;
+            if (driver != null) {
+                driver.indexJob(job);
+                if (DriverCapacityLedger.isActive(job.getStatus())) {
+                    capacityLedger.recordAssignment(driver.getDriverId(), deliveryDay(job));
+                }
+            }
+        }
+        return true;
+    }
+
+    // Moves a job to a new delivery time, keeping every index (and the
+    // assigned driver's capacity) consistent. Fails if the new slot would
+    // duplicate another job or the driver has no room on the new day.
+    public boolean rescheduleJob(String jobId, LocalDateTime newDeliveryDate) {
+        if (newDeliveryDate == null || newDeliveryDate.isBefore(LocalDateTime.now())) {
+            return false;
+        }
+        return moveJob(jobId, newDeliveryDate);
+    }
+
+    // Journal replay: same as rescheduleJob but past times are accepted
+    boolean restoreSchedule(String jobId, LocalDateTime deliveryDate) {
+        return deliveryDate != null && moveJob(jobId, deliveryDate);
+    }
+
+    private boolean moveJob(String jobId, LocalDateTime newDeliveryDate) {
+        DeliveryJob job = jobsById.get(jobId);
+        if (job == null) {
             return false;
         }
-        return deliveryJobs.add(job);
+        synchronized (job) {
+            if (!isPending(job.getStatus())) {
+                return false;
+            }
+            LocalDate oldDay = deliveryDay(job);
+            LocalDate newDay = newDeliveryDate.toLocalDate();
+            String oldKey = duplicateKey(job);
+            String newKey = duplicateKey(job.getCustomerName(), job.getDeliveryAddress(), newDay);
+            if (!newKey.equals(oldKey)) {
+                String holder = duplicateIndex.putIfAbsent(newKey, job.getJobId());
+                if (holder != null && !holder.equals(job.getJobId())) {
+                    return false;
+                }
+            }
+            String driverId = job.getAssignedDriverId();
+            boolean holdsCapacity = driverId != null && DriverCapacityLedger.isActive(job.getStatus());
+            if (holdsCapacity && !newDay.equals(oldDay) && !capacityLedger.tryReserve(driverId, newDay)) {
+                if (!newKey.equals(oldKey)) {
+                    duplicateIndex.remove(newKey, job.getJobId());
+                }
+                return false;
+            }
+
+            job.restoreDeliveryDate(newDeliveryDate);
+            if (holdsCapacity && !newDay.equals(oldDay)) {
+                capacityLedger.releaseAssignment(driverId, oldDay);
+            }
+            if (oldKey != null && !oldKey.equals(newKey)) {
+                duplicateIndex.remove(oldKey, job.getJobId());
+            }
+            if (!newDay.equals(oldDay)) {
+                if (oldDay != null) {
+                    Set<DeliveryJob> oldDayJobs = jobsByDate.get(oldDay);
+                    if (oldDayJobs != null) oldDayJobs.remove(job);
+                }
+                jobsByDate.computeIfAbsent(newDay, d -> ConcurrentHashMap.newKeySet()).add(job);
+            }
+            DeliveryDriver driver = driverId != null ? driversById.get(driverId) : null;
+            if (driver != null) {
+                driver.indexJob(job);
+            }
+            updatePending(job);
+            JobJournal j = journal;
+            if (j != null) j.recordJobRescheduled(job.getJobId(), newDeliveryDate);
+        }
+        return true;
     }
 
     private boolean isDuplicateJob(DeliveryJob newJob) {
-        return deliveryJobs.stream().anyMatch(job -> 
-            job.getCustomerName().equalsIgnoreCase(newJob.getCustomerName()) &&
-            job.getDeliveryAddress().equalsIgnoreCase(newJob.getDeliveryAddress()) &&
-            (job.getDeliveryDate() != null && job.getDeliveryDate().toLocalDate()
-                .equals(newJob.getDeliveryDate() != null ? 
-                    newJob.getDeliveryDate().toLocalDate() : null))
-        );
+        String key = duplicateKey(newJob);
+        return key != null && duplicateIndex.containsKey(key);
+    }
+
+    // Jobs without a delivery date are never considered duplicates
+    private static String duplicateKey(DeliveryJob job) {
+        LocalDate day = deliveryDay(job);
+        if (day == null) {
+            return null;
+        }
+        return duplicateKey(job.getCustomerName(), job.getDeliveryAddress(), day);
+    }
+
+    private static String duplicateKey(String customerName, String deliveryAddress, LocalDate day) {
+        return normalize(customerName) + '\u0000'
+            + normalize(deliveryAddress) + '\u0000'
+            + day.toEpochDay();
+    }
+
+    private static String normalize(String s) {
+        if (s == null) return "";
+        return WHITESPACE.matcher(s.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
     }
 
     public boolean updateJobStatus(String jobId, DeliveryJob.DeliveryStatus newStatus) {
         return findJobById(jobId)
             .map(job -> {
-                job.updateStatus(newStatus);
+                synchronized (job) {
+                    DeliveryJob.DeliveryStatus oldStatus = job.getStatus();
+                    if (newStatus == null || !oldStatus.canTransitionTo(newStatus)) {
+                        return false; // not a valid lifecycle transition
+                    }
+                    if (!claimCapacity(job, oldStatus, newStatus)) {
+                        return false; // no driver, or the driver is full that day
+                    }
+                    job.updateStatus(newStatus);
+                    reindexStatus(job, oldStatus);
+                    releaseCapacity(job, oldStatus);
+                    updateDuplicateIndex(job, oldStatus);
+                    updatePending(job);
+                    JobJournal j = journal;
+                    if (j != null && oldStatus != newStatus) j.recordStatusChanged(job.getJobId(), newStatus);
+                }
                 return true;
             })
             .orElse(false);
     }
 
     public Optional<DeliveryJob> findJobById(String jobId) {
-        return deliveryJobs.stream()
-            .filter(job -> job.getJobId().equals(jobId))
-            .findFirst();
+        return jobId == null ? Optional.empty() : Optional.ofNullable(jobsById.get(jobId));
+    }
+
+    public List<DeliveryJob> getJobsByStatus(DeliveryJob.DeliveryStatus status) {
+        Set<DeliveryJob> jobs = jobsByStatus.get(status);
+        return jobs != null ? new ArrayList<>(jobs) : Collections.emptyList();
+    }
+
+    public List<DeliveryJob> getJobsForDate(LocalDate date) {
+        Set<DeliveryJob> jobs = jobsByDate.get(date);
+        return jobs != null ? new ArrayList<>(jobs) : Collections.emptyList();
+    }
+
+    private void reindexStatus(DeliveryJob job, DeliveryJob.DeliveryStatus oldStatus) {
+        if (oldStatus != job.getStatus()) {
+            jobsByStatus.get(oldStatus).remove(job);
+            jobsByStatus.get(job.getStatus()).add(job);
+        }
+    }
+
+    // Re-keys the job in the pending set; callers hold the job's monitor
+    private void updatePending(DeliveryJob job) {
+        PendingKey oldKey = pendingKeys.remove(job.getJobId());
+        if (oldKey != null) {
+            pendingJobs.remove(oldKey);
+        }
+        if (isPending(job.getStatus())) {
+            PendingKey key = pendingKey(job);
+            pendingKeys.put(job.getJobId(), key);
+            pendingJobs.put(key, job);
+        }
+    }
+
+    private PendingKey pendingKey(DeliveryJob job) {
+        Long sequence = creationSequence.get(job.getJobId());
+        return new PendingKey(job.getDeliveryDate() != null ? job.getDeliveryDate() : LocalDateTime.MAX,
+            sequence != null ? sequence : Long.MAX_VALUE);
+    }
+
+    private static boolean isPending(DeliveryJob.DeliveryStatus status) {
+        return status != DeliveryJob.DeliveryStatus.DELIVERED
+            && status != DeliveryJob.DeliveryStatus.CANCELLED;
+    }
+
+    // A job moving back into ASSIGNED/IN_TRANSIT needs a driver and claims its
+    // slot like a fresh assignment, so the daily limit holds; undated jobs take
+    // no slot, as in DeliveryDriver.assignJob. Callers hold the job's monitor.
+    private boolean claimCapacity(DeliveryJob job, DeliveryJob.DeliveryStatus oldStatus,
+                                  DeliveryJob.DeliveryStatus newStatus) {
+        if (DriverCapacityLedger.isActive(oldStatus) || !DriverCapacityLedger.isActive(newStatus)) {
+            return true;
+        }
+        String driverId = job.getAssignedDriverId();
+        if (driverId == null) {
+            return false;
+        }
+        LocalDate day = deliveryDay(job);
+        return day == null || capacityLedger.tryReserve(driverId, day);
+    }
+
+    // Frees the driver's slot when a job leaves ASSIGNED/IN_TRANSIT
+    private void releaseCapacity(DeliveryJob job, DeliveryJob.DeliveryStatus oldStatus) {
+        if (DriverCapacityLedger.isActive(oldStatus) && !DriverCapacityLedger.isActive(job.getStatus())
+                && job.getAssignedDriverId() != null) {
+            capacityLedger.releaseAssignment(job.getAssignedDriverId(), deliveryDay(job));
+        }
+    }
+
+    // Cancelled jobs release their (customer, address, day) slot so the job can be re-booked
+    private void updateDuplicateIndex(DeliveryJob job, DeliveryJob.DeliveryStatus oldStatus) {
+        String key = duplicateKey(job);
+        if (key == null || oldStatus == job.getStatus()) {
+            return;
+        }
+        if (job.getStatus() == DeliveryJob.DeliveryStatus.CANCELLED) {
+            duplicateIndex.remove(key, job.getJobId());
+        } else if (oldStatus == DeliveryJob.DeliveryStatus.CANCELLED) {
+            duplicateIndex.putIfAbsent(key, job.getJobId());
+        }
+    }
+
+    public int getMaxJobsPerDriverPerDay() {
+        return capacityLedger.getMaxJobsPerDay();
+    }
+
+    public void setMaxJobsPerDriverPerDay(int maxJobs) {
+        capacityLedger.setMaxJobsPerDay(maxJobs);
+    }
+
+    private static LocalDate deliveryDay(DeliveryJob job) {
+        return job.getDeliveryDate() != null ? job.getDeliveryDate().toLocalDate() : null;
     }
 
     // Driver Management
+    // The driver is journaled before the manager takes it, so a journal failure
+    // leaves neither side changed; registrations are serialized so the journal
+    // holds them in the order they won
     public boolean registerDriver(DeliveryDriver driver) {
-        if (driver == null || driverExists(driver.getDriverId())) {
+        if (driver == null) {
             return false;
         }
-        return drivers.add(driver);
+        synchronized (driversById) {
+            if (driverExists(driver.getDriverId())) {
+                return false;
+            }
+            JobJournal j = journal;
+            if (j != null) j.recordDriverRegistered(driver);
+            driver.useCapacityLedger(capacityLedger);
+            driversById.put(driver.getDriverId(), driver);
+            driversInOrder.add(driver);
+            driver.setOwner(this);
+        }
+        return true;
+    }
+
+    // Called by DeliveryDriver.setAvailable on a registered driver
+    void recordAvailability(DeliveryDriver driver, boolean available) {
+        JobJournal j = journal;
+        if (j != null) j.recordDriverAvailability(driver.getDriverId(), available);
     }
 
     private boolean driverExists(String driverId) {
-        return drivers.stream()
-            .anyMatch(d -> d.getDriverId().equals(driverId));
+        return driversById.containsKey(driverId);
     }
 
     // Assignment Logic
@@ -68,114 +387,302 @@ public class DeliveryManager {
             return false;
         }
 
-        DeliveryJob job = jobOpt.get();
-        DeliveryDriver driver = driverOpt.get();
+        return assign(jobOpt.get(), driverOpt.get());
+    }
+
+    private boolean assign(DeliveryJob job, DeliveryDriver driver) {
+        String driverId = driver.getDriverId();
+        // The job monitor makes check-and-assign atomic per job; the driver's
+        // daily slot is claimed by CAS inside assignJob (see DriverCapacityLedger)
+        synchronized (job) {
+            if (job.getStatus() == DeliveryJob.DeliveryStatus.IN_TRANSIT
+                    || job.getStatus() == DeliveryJob.DeliveryStatus.DELIVERED
+                    || job.getStatus() == DeliveryJob.DeliveryStatus.CANCELLED) {
+                return false; // Job is no longer assignable
+            }
 
-        if (job.getDeliveryDate() != null && 
-            !driver.canAcceptJob(job.getDeliveryDate().toLocalDate())) {
-            return false; // Driver has reached daily job limit
+            DeliveryJob.DeliveryStatus oldStatus = job.getStatus();
+            String previousDriverId = job.getAssignedDriverId();
+            if (!driver.assignJob(job)) {
+                return false; // Driver unavailable or at daily job limit
+            }
+            if (previousDriverId != null && !previousDriverId.equals(driverId)) {
+                // Reassignment: free the slot the job held on its previous driver
+                DeliveryDriver previous = driversById.get(previousDriverId);
+                if (previous != null && previous.releaseJob(job) && DriverCapacityLedger.isActive(oldStatus)) {
+                    capacityLedger.releaseAssignment(previousDriverId, deliveryDay(job));
+                }
+            }
+            reindexStatus(job, oldStatus);
+            JobJournal j = journal;
+            if (j != null) j.recordJobAssigned(job.getJobId(), driverId);
         }
+        return true;
+    }
 
-        return driver.assignJob(job);
+    // Journal: once attached, every create/assign/status/reschedule is recorded
+    public void attachJournal(JobJournal journal) {
+        this.journal = journal;
+        if (journal != null) {
+            journal.bind(this);
+        }
     }
 
+    public JobJournal getJournal() {
+        return journal;
+    }
+
+    // Picks the available driver with the most room left that day (earliest registered on ties)
     public Optional<DeliveryDriver> findAvailableDriver(LocalDate deliveryDate) {
-        return drivers.stream()
+        return driversInOrder.stream()
             .filter(DeliveryDriver::isAvailable)
-            .filter(driver -> {
-                long jobsOnDate = driver.getAssignedJobs().stream()
-                    .filter(job -> job.getDeliveryDate() != null && 
-                                 job.getDeliveryDate().toLocalDate().equals(deliveryDate))
-                    .count();
-                return jobsOnDate < MAX_JOBS_PER_DRIVER_PER_DAY;
-            })
-            .findFirst();
+            .filter(driver -> capacityLedger.hasCapacity(driver.getDriverId(), deliveryDate))
+            .max(Comparator.comparingInt(driver ->
+                capacityLedger.getRemainingCapacity(driver.getDriverId(), deliveryDate)));
+    }
+
+    // Bulk dispatch: assigns every PENDING/CONFIRMED job for the day first-come,
+    // first-served by createdDate, always to the driver with the most remaining capacity
+    public DispatchResult dispatchDay(LocalDate deliveryDate) {
+        DispatchResult result = new DispatchResult();
+        List<DeliveryJob> jobs = getJobsForDate(deliveryDate).stream()
+            .filter(job -> job.getStatus() == DeliveryJob.DeliveryStatus.PENDING
+                        || job.getStatus() == DeliveryJob.DeliveryStatus.CONFIRMED)
+            .sorted(Comparator.comparing(DeliveryJob::getCreatedDate)
+                .thenComparing(DeliveryJob::getJobId))
+            .collect(Collectors.toList());
+
+        PriorityQueue<DriverSlot> slots = new PriorityQueue<>();
+        int order = 0;
+        for (DeliveryDriver driver : driversInOrder) {
+            int remaining = driver.getRemainingCapacity(deliveryDate);
+            if (remaining > 0) {
+                slots.add(new DriverSlot(driver, remaining, order));
+            }
+            order++;
+        }
+
+        List<DriverSlot> refused = new ArrayList<>();
+        for (DeliveryJob job : jobs) {
+            boolean assigned = false;
+            while (!assigned && !slots.isEmpty()) {
+                DriverSlot slot = slots.poll();
+                assigned = assign(job, slot.driver);
+                // Re-read the ledger: other dispatchers may have taken slots meanwhile
+                slot.remaining = slot.driver.getRemainingCapacity(deliveryDate);
+                if (slot.remaining > 0) {
+                    // a driver that refused this job is not offered it again
+                    (assigned ? slots : refused).add(slot);
+                }
+                if (!assigned && (!deliveryDate.equals(deliveryDay(job))
+                        || (job.getStatus() != DeliveryJob.DeliveryStatus.PENDING
+                            && job.getStatus() != DeliveryJob.DeliveryStatus.CONFIRMED))) {
+                    break; // job was taken, closed or rescheduled elsewhere
+                }
+            }
+            slots.addAll(refused);
+            refused.clear();
+            if (assigned) {
+                result.assignments.put(job.getJobId(), job.getAssignedDriverId());
+            } else {
+                result.unassigned.add(job);
+            }
+        }
+        return result;
+    }
+
+    private static final class DriverSlot implements Comparable<DriverSlot> {
+        final DeliveryDriver driver;
+        final int registrationOrder;
+        int remaining;
+
+        DriverSlot(DeliveryDriver driver, int remaining, int registrationOrder) {
+            this.driver = driver;
+            this.remaining = remaining;
+            this.registrationOrder = registrationOrder;
+        }
+
+        @Override
+        public int compareTo(DriverSlot other) {
+            int byRemaining = Integer.compare(other.remaining, remaining);
+            return byRemaining != 0 ? byRemaining : Integer.compare(registrationOrder, other.registrationOrder);
+        }
+    }
+
+    public static class DispatchResult {
+        private final Map<String, String> assignments = new LinkedHashMap<>();
+        private final List<DeliveryJob> unassigned = new ArrayList<>();
+
+        // jobId -> driverId, in dispatch order
+        public Map<String, String> getAssignments() { return Collections.unmodifiableMap(assignments); }
+        public List<DeliveryJob> getUnassignedJobs() { return Collections.unmodifiableList(unassigned); }
+        public int getAssignedCount() { return assignments.size(); }
+
+        @Override
+        public String toString() {
+            return String.format("Dispatched %d job(s), %d left unassigned",
+                assignments.size(), unassigned.size());
+        }
     }
 
     // Notification System
+    public void setNotificationDispatcher(NotificationDispatcher dispatcher) {
+        this.notificationDispatcher = dispatcher;
+    }
+
+    public NotificationDispatcher getNotificationDispatcher() {
+        return notificationDispatcher;
+    }
+
     public void notifyDriver(DeliveryDriver driver, String message) {
-        System.out.println("Sending notification to driver " + driver.getName() + 
-                          " (" + driver.getContactNumber() + "): " + message);
+        sendNotification(new Notification(Notification.RecipientType.DRIVER,
+            driver.getName(), driver.getContactNumber(), message));
     }
 
     public void notifyCustomer(String customerName, String contactInfo, String message) {
-        System.out.println("Sending notification to customer " + customerName + 
-                          " (" + contactInfo + "): " + message);
+        sendNotification(new Notification(Notification.RecipientType.CUSTOMER,
+            customerName, contactInfo, message));
+    }
+
+    private void sendNotification(Notification notification) {
+        NotificationDispatcher dispatcher = notificationDispatcher;
+        if (dispatcher != null) {
+            dispatcher.submit(notification);
+            return;
+        }
+        try {
+            INLINE_SINK.deliver(Collections.singletonList(notification));
+        } catch (Exception e) {
+            System.out.println("Notification delivery failed: " + e.getMessage());
+        }
     }
 
     // Reporting
+    // Ordered by delivery time (unscheduled last), then creation order
     public List<DeliveryJob> getPendingDeliveries() {
-        return deliveryJobs.stream()
-            .filter(job -> job.getStatus() != DeliveryJob.DeliveryStatus.DELIVERED &&
-                          job.getStatus() != DeliveryJob.DeliveryStatus.CANCELLED)
-            .sorted(Comparator.comparing(job -> job.getDeliveryDate() != null ? 
-                    job.getDeliveryDate() : LocalDateTime.MAX))
-            .collect(Collectors.toList());
+        return new ArrayList<>(pendingJobs.values());
+    }
+
+    public List<DeliveryJob> getPendingDeliveries(int limit) {
+        return page(pendingJobs, limit);
+    }
+
+    // Cursor paging: the first `limit` pending jobs scheduled strictly after the given time
+    public List<DeliveryJob> getPendingDeliveriesAfter(LocalDateTime after, int limit) {
+        if (after == null) {
+            return getPendingDeliveries(limit);
+        }
+        return page(pendingJobs.tailMap(new PendingKey(after, Long.MAX_VALUE), false), limit);
+    }
+
+    // Cursor paging: the next `limit` pending jobs after the last job of the previous page
+    public List<DeliveryJob> getPendingDeliveriesAfter(String lastJobId, int limit) {
+        DeliveryJob last = lastJobId != null ? jobsById.get(lastJobId) : null;
+        if (last == null) {
+            return getPendingDeliveries(limit);
+        }
+        return page(pendingJobs.tailMap(pendingKey(last), false), limit);
+    }
+
+    private static List<DeliveryJob> page(Map<PendingKey, DeliveryJob> source, int limit) {
+        List<DeliveryJob> result = new ArrayList<>(Math.max(0, Math.min(limit, 256)));
+        for (DeliveryJob job : source.values()) {
+            if (result.size() >= limit) break;
+            result.add(job);
+        }
+        return result;
+    }
+
+    private static final class PendingKey implements Comparable<PendingKey> {
+        final LocalDateTime deliveryDate;
+        final long sequence;
+
+        PendingKey(LocalDateTime deliveryDate, long sequence) {
+            this.deliveryDate = deliveryDate;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(PendingKey other) {
+            int byDate = deliveryDate.compareTo(other.deliveryDate);
+            return byDate != 0 ? byDate : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PendingKey)) return false;
+            PendingKey that = (PendingKey) o;
+            return sequence == that.sequence && deliveryDate.equals(that.deliveryDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(deliveryDate, sequence);
+        }
     }
 
     public List<DeliveryJob> getDriverSchedule(String driverId, LocalDate date) {
         return findDriverById(driverId)
-            .map(driver -> driver.getAssignedJobs().stream()
-                .filter(job -> job.getDeliveryDate() != null && 
-                             job.getDeliveryDate().toLocalDate().equals(date))
-                .sorted(Comparator.comparing(DeliveryJob::getDeliveryDate))
-                .collect(Collectors.toList()))
+            .map(driver -> driver.getSchedule(date))
+            .orElse(Collections.emptyList());
+    }
+
+    public List<DeliveryJob> getDriverSchedule(String driverId, LocalDateTime from, LocalDateTime to) {
+        return findDriverById(driverId)
+            .map(driver -> driver.getSchedule(from, to))
             .orElse(Collections.emptyList());
     }
 
+    public Optional<DeliveryJob> findNextJobForDriver(String driverId, LocalDateTime after) {
+        return findDriverById(driverId).flatMap(driver -> driver.getNextJob(after));
+    }
+
+    // Available drivers with no active job scheduled in [from, to)
+    public List<DeliveryDriver> findDriversFreeInWindow(LocalDateTime from, LocalDateTime to) {
+        return driversInOrder.stream()
+            .filter(DeliveryDriver::isAvailable)
+            .filter(driver -> driver.isFreeBetween(from, to))
+            .collect(Collectors.toList());
+    }
+
     // Helper methods
     public Optional<DeliveryDriver> findDriverById(String driverId) {
-        return drivers.stream()
-            .filter(driver -> driver.getDriverId().equals(driverId))
-            .findFirst();
+        return driverId == null ? Optional.empty() : Optional.ofNullable(driversById.get(driverId));
     }
 
     public List<DeliveryDriver> getAvailableDrivers() {
-        return drivers.stream()
+        return driversInOrder.stream()
             .filter(DeliveryDriver::isAvailable)
             .collect(Collectors.toList());
     }
 
     public List<DeliveryJob> getAllJobs() {
-        return new ArrayList<>(deliveryJobs);
+        return new ArrayList<>(jobsInOrder);
     }
 
     public List<DeliveryDriver> getAllDrivers() {
-        return new ArrayList<>(drivers);
+        return new ArrayList<>(driversInOrder);
     }
 
     // Notification templates
     public void sendJobAssignmentNotification(DeliveryJob job, DeliveryDriver driver) {
-        String message = String.format(
-            "New delivery job assigned!\n" +
-            "Job ID: %s\n" +
-            "Customer: %s\n" +
-            "Address: %s\n" +
-            "Items: %s\n" +
-            "Scheduled: %s\n" +
-            "Please acknowledge receipt of this assignment.",
-            job.getJobId(),
-            job.getCustomerName(),
-            job.getDeliveryAddress(),
-            job.getGoodsDescription(),
-            job.getDeliveryDate() != null ? 
-                job.getDeliveryDate().format(java.time.format.DateTimeFormatter.ofPattern("MMM dd, yyyy hh:mm a")) : 
-                "Not scheduled yet"
-        );
-        notifyDriver(driver, message);
+        notifyDriver(driver, ASSIGNMENT_TEMPLATE.render(job));
     }
 
     public void sendDeliveryUpdateToCustomer(DeliveryJob job, String updateMessage) {
         String customerContact = "[Customer Contact Info]";
-        String message = String.format(
-            "Delivery Update for Order %s\n" +
-            "Status: %s\n" +
-            "%s\n" +
-            "Thank you for choosing our service!",
-            job.getJobId(),
-            job.getStatus(),
-            updateMessage
-        );
+        String message = CUSTOMER_UPDATE_TEMPLATE.render(new CustomerUpdate(job, updateMessage));
         notifyCustomer(job.getCustomerName(), customerContact, message);
     }
+
+    private static final class CustomerUpdate {
+        final DeliveryJob job;
+        final String message;
+
+        CustomerUpdate(DeliveryJob job, String message) {
+            this.job = job;
+            this.message = message;
+        }
+    }
 }
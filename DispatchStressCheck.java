@@ -0,0 +1,120 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Concurrency check for one DeliveryManager shared by several dispatcher
+ threads. Every thread makes random assign/reassign calls (and a few
+ reschedules across the same days) against the same drivers and jobs, then
+ the final state is checked: no driver is over the daily limit, the ledger's
+ count for each driver and day equals the active jobs in that driver's
+ schedule, and every active job sits in the schedule of the driver it names
+ and no other. Runs offline; exits with status 1 if a check fails.
+ Run: java DispatchStressCheck [threads] [calls] [drivers] [jobs] [days]
+*/
+public class DispatchStressCheck {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int calls = args.length > 1 ? Integer.parseInt(args[1]) : 160_000;
+        int drivers = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int jobs = args.length > 3 ? Integer.parseInt(args[3]) : 600;
+        int days = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        DeliveryManager manager = new DeliveryManager();
+        List<String> driverIds = new ArrayList<>();
+        for (int i = 0; i < drivers; i++) {
+            DeliveryDriver driver = new DeliveryDriver("DRV-" + i, "Driver " + i, "555-01" + i, "LIC-" + i, "Truck " + i);
+            manager.registerDriver(driver);
+            driverIds.add(driver.getDriverId());
+        }
+        LocalDateTime firstDay = LocalDate.now().plusDays(1).atTime(9, 0);
+        List<String> jobIds = new ArrayList<>();
+        for (int i = 0; i < jobs; i++) {
+            DeliveryJob job = new DeliveryJob("Customer " + i, i + " Main St, Kingston",
+                "10x 2x4 Lumber", 25000.00, 10000.00);
+            job.setDeliveryDate(firstDay.plusDays(i % days).plusMinutes(i % 480));
+            manager.createDeliveryJob(job);
+            jobIds.add(job.getJobId());
+        }
+
+        AtomicLong assigned = new AtomicLong();
+        AtomicLong rescheduled = new AtomicLong();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int share = calls / threads + (t < calls % threads ? 1 : 0);
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < share; i++) {
+                    String jobId = jobIds.get(random.nextInt(jobIds.size()));
+                    if (random.nextInt(20) == 0) {
+                        LocalDateTime when = firstDay.plusDays(random.nextInt(days)).plusMinutes(random.nextInt(480));
+                        if (manager.rescheduleJob(jobId, when)) rescheduled.incrementAndGet();
+                    } else if (manager.assignJobToDriver(jobId, driverIds.get(random.nextInt(driverIds.size())))) {
+                        assigned.incrementAndGet();
+                    }
+                }
+            }, "dispatcher-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d threads, %d calls, %d drivers, %d jobs over %d days: %d assigned, %d rescheduled in %.2f s%n",
+            threads, calls, drivers, jobs, days, assigned.get(), rescheduled.get(), seconds);
+
+        List<String> problems = check(manager, firstDay.toLocalDate(), days);
+        for (String problem : problems.subList(0, Math.min(20, problems.size()))) {
+            System.out.println("FAIL " + problem);
+        }
+        System.out.println(problems.isEmpty() ? "OK: capacity and schedules consistent" : problems.size() + " problems");
+        System.exit(problems.isEmpty() ? 0 : 1);
+    }
+
+    private static List<String> check(DeliveryManager manager, LocalDate firstDay, int days) {
+        List<String> problems = new ArrayList<>();
+        int limit = manager.getMaxJobsPerDriverPerDay();
+        for (DeliveryDriver driver : manager.getAllDrivers()) {
+            for (int d = 0; d < days; d++) {
+                LocalDate day = firstDay.plusDays(d);
+                int active = 0;
+                for (DeliveryJob job : driver.getSchedule(day)) {
+                    if (!driver.getDriverId().equals(job.getAssignedDriverId())) {
+                        problems.add(job.getJobId() + " is in " + driver.getDriverId() + "'s schedule but names "
+                            + job.getAssignedDriverId());
+                    }
+                    if (DriverCapacityLedger.isActive(job.getStatus())) active++;
+                }
+                int counted = limit - driver.getRemainingCapacity(day);
+                if (active > limit) {
+                    problems.add(driver.getDriverId() + " holds " + active + " jobs on " + day + ", limit " + limit);
+                }
+                if (counted != active) {
+                    problems.add(driver.getDriverId() + " on " + day + ": ledger " + counted + ", schedule " + active);
+                }
+            }
+        }
+        for (DeliveryJob job : manager.getAllJobs()) {
+            if (!DriverCapacityLedger.isActive(job.getStatus())) continue;
+            DeliveryDriver driver = manager.findDriverById(job.getAssignedDriverId()).orElse(null);
+            LocalDate day = job.getDeliveryDate().toLocalDate();
+            if (driver == null || !driver.getSchedule(day).contains(job)) {
+                problems.add(job.getJobId() + " is active but missing from " + job.getAssignedDriverId() + "'s schedule");
+            }
+        }
+        return problems;
+    }
+}
@@ -0,0 +1,117 @@
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ Tracks how many active (ASSIGNED / IN_TRANSIT) jobs each driver holds per
+ delivery day, so capacity checks do not need to walk a driver's history.
+ Counters are keyed by driverId and epoch-day and held in AtomicIntegers.
+ The per-day limit lives here so drivers and the manager share one policy.
+ tryReserve claims a slot with a CAS on the counter, so concurrent callers
+ can never push a driver past the limit.
+
+ A counter that falls back to zero is retired (CAS 0 -> RETIRED) and then
+ unmapped, so days that are over, or whose jobs all finished, do not pile
+ up. A caller that finds a retired counter unmaps it and takes a fresh one;
+ a retired counter never changes again, so no update can be lost on a
+ counter that is no longer in the map.
+*/
+public class DriverCapacityLedger {
+    public static final int DEFAULT_MAX_JOBS_PER_DAY = 3;
+    private static final int RETIRED = -1;
+
+    private final Map<String, Map<Long, AtomicInteger>> activeJobs = new ConcurrentHashMap<>();
+    private volatile int maxJobsPerDay;
+
+    public DriverCapacityLedger() {
+        this(DEFAULT_MAX_JOBS_PER_DAY);
+    }
+
+    public DriverCapacityLedger(int maxJobsPerDay) {
+        setMaxJobsPerDay(maxJobsPerDay);
+    }
+
+    public int getMaxJobsPerDay() { return maxJobsPerDay; }
+
+    public void setMaxJobsPerDay(int maxJobsPerDay) {
+        if (maxJobsPerDay < 1) {
+            throw new IllegalArgumentException("Max jobs per day must be at least 1");
+        }
+        this.maxJobsPerDay = maxJobsPerDay;
+    }
+
+    public int getActiveJobs(String driverId, LocalDate day) {
+        if (driverId == null || day == null) return 0;
+        Map<Long, AtomicInteger> days = activeJobs.get(driverId);
+        if (days == null) return 0;
+        AtomicInteger counter = days.get(day.toEpochDay());
+        return counter != null ? Math.max(0, counter.get()) : 0;
+    }
+
+    public int getRemainingCapacity(String driverId, LocalDate day) {
+        return Math.max(0, maxJobsPerDay - getActiveJobs(driverId, day));
+    }
+
+    public boolean hasCapacity(String driverId, LocalDate day) {
+        return getActiveJobs(driverId, day) < maxJobsPerDay;
+    }
+
+    // Atomically takes one slot if the driver is under the limit for that day
+    public boolean tryReserve(String driverId, LocalDate day) {
+        if (driverId == null || day == null) return false;
+        return increment(driverId, day.toEpochDay(), maxJobsPerDay);
+    }
+
+    // Unconditional increment for jobs restored in an active state (journal replay, driver registration)
+    public void recordAssignment(String driverId, LocalDate day) {
+        if (driverId == null || day == null) return;
+        increment(driverId, day.toEpochDay(), Integer.MAX_VALUE);
+    }
+
+    public void releaseAssignment(String driverId, LocalDate day) {
+        if (driverId == null || day == null) return;
+        Map<Long, AtomicInteger> days = activeJobs.get(driverId);
+        if (days == null) return;
+        Long epochDay = day.toEpochDay();
+        AtomicInteger counter = days.get(epochDay);
+        if (counter == null) return;
+        int left = counter.updateAndGet(n -> n > 0 ? n - 1 : n);
+        if (left == 0 && counter.compareAndSet(0, RETIRED)) {
+            days.remove(epochDay, counter);
+        }
+    }
+
+    // CAS loop on the live counter for that day; replaces a retired one
+    private boolean increment(String driverId, long epochDay, int limit) {
+        Map<Long, AtomicInteger> days = activeJobs.computeIfAbsent(driverId, id -> new ConcurrentHashMap<>());
+        while (true) {
+            AtomicInteger counter = days.computeIfAbsent(epochDay, d -> new AtomicInteger());
+            int current = counter.get();
+            if (current == RETIRED) {
+                days.remove(epochDay, counter);
+                continue;
+            }
+            if (current >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Driver-days with at least one active job, i.e. counters currently held
+    public int getTrackedDayCount() {
+        int total = 0;
+        for (Map<Long, AtomicInteger> days : activeJobs.values()) {
+            total += days.size();
+        }
+        return total;
+    }
+
+    public static boolean isActive(DeliveryJob.DeliveryStatus status) {
+        return status == DeliveryJob.DeliveryStatus.ASSIGNED
+            || status == DeliveryJob.DeliveryStatus.IN_TRANSIT;
+    }
+}
@@ -13,23 +13,33 @@ public class Feedback {
     }
 
     public String toJson() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        sb.append("\"customer_id\":\"").append(escapeJson(customerID)).append("\",");
-        sb.append("\"title\":\"").append(escapeJson(feedbackTitle)).append("\",");
-        sb.append("\"context\":\"").append(escapeJson(feedbackContent)).append("\"");
-        sb.append("}");
-        return sb.toString();
+        JsonWriter out = new JsonWriter();
+        writeJson(out);
+        return out.toString();
     }
 
-    private static String escapeJson(String s) {
-        if (s == null) return "";
-        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    public void writeJson(JsonWriter out) {
+        out.beginObject();
+        out.name("customer_id").value(orEmpty(customerID));
+        out.name("title").value(orEmpty(feedbackTitle));
+        out.name("context").value(orEmpty(feedbackContent));
+        out.endObject();
+    }
+
+    private static String orEmpty(String s) {
+        return s != null ? s : "";
     }
 
     public boolean saveToSupabase() throws IOException, InterruptedException {
-        String body = "[" + toJson() + "]";
+        JsonWriter body = JsonWriter.forThread().beginArray();
+        writeJson(body);
+        body.endArray();
         HttpResponse<String> resp = SupabaseClient.postUpsert("feedback", body, null, null);
         return resp.statusCode() >= 200 && resp.statusCode() < 300;
     }
+
+    // Write-behind variant: sent with other queued feedback rows in one request
+    public void queueSave() {
+        SupabaseWriteBehind.shared().enqueue("feedback", null, null, toJson());
+    }
 }
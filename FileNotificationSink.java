@@ -0,0 +1,35 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Appends notifications to a log file, one line per message, flushed per batch
+public class FileNotificationSink implements NotificationSink, Closeable {
+    private final BufferedWriter writer;
+
+    public FileNotificationSink(Path file) throws IOException {
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized void deliver(List<Notification> batch) throws IOException {
+        for (Notification n : batch) {
+            writer.write(n.getCreatedAt().toString());
+            writer.write(' ');
+            // keep multi-line messages on one log line
+            writer.write(n.toString().replace("\n", " | "));
+            writer.newLine();
+        }
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
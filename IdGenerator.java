@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Time-ordered 64-bit ids, unique across processes without a database round
+ trip. Layout, most significant first:
+
+   1 bit  zero (ids are positive)
+   41 bits milliseconds since 2024-01-01T00:00Z (about 69 years)
+   10 bits node id (0-1023), one per running dispatcher instance
+   12 bits sequence within the millisecond (4096 per node per ms)
+
+ Threads take a block of sequence numbers for the current millisecond with
+ one CAS on a shared counter and then mint from that block without touching
+ shared state. A thread's block grows while it keeps using it up and
+ shrinks when it goes idle, so busy threads rarely CAS and quiet ones do not
+ waste sequence space. When a millisecond is used up, or the clock steps
+ back, the generator moves on to the next millisecond instead of waiting,
+ so ids are unique per node and increasing per thread; ids from different
+ threads may interleave out of order.
+
+ The node id comes from DISPATCHER_NODE_ID; without it one is derived from
+ the host name and process id, which is fine for a single box but should be
+ set explicitly when several instances share a database.
+
+ format() renders an id as 13 Crockford base32 characters, fixed width, so
+ the strings sort in the same order as the numbers.
+*/
+public final class IdGenerator {
+    public static final long EPOCH_MILLIS = 1_704_067_200_000L;
+    public static final int MAX_NODE_ID = 1023;
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_COUNT = 1 << SEQUENCE_BITS;
+    // shared state: (millis << STATE_SHIFT) | next free sequence, which may equal SEQUENCE_COUNT
+    private static final int STATE_SHIFT = SEQUENCE_BITS + 1;
+    private static final int MAX_BLOCK = 256;
+    private static final char[] BASE32 = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int ENCODED_LENGTH = 13;
+
+    private static volatile IdGenerator shared;
+
+    private final int nodeId;
+    private final AtomicLong state = new AtomicLong();
+    private final ThreadLocal<Block> blocks = ThreadLocal.withInitial(Block::new);
+
+    // Sequence numbers [next, end) of millisecond millis, owned by one thread
+    private static final class Block {
+        long millis = -1;
+        int next;
+        int end;
+        int size = 1;
+    }
+
+    public IdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeId = nodeId;
+    }
+
+    public static IdGenerator shared() {
+        IdGenerator instance = shared;
+        if (instance == null) {
+            synchronized (IdGenerator.class) {
+                instance = shared;
+                if (instance == null) {
+                    instance = new IdGenerator(defaultNodeId());
+                    shared = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public long nextId() {
+        Block block = blocks.get();
+        long now = System.currentTimeMillis() - EPOCH_MILLIS;
+        if (block.next >= block.end || block.millis < now) {
+            refill(block, now);
+        }
+        return (block.millis << (NODE_BITS + SEQUENCE_BITS)) | ((long) nodeId << SEQUENCE_BITS) | block.next++;
+    }
+
+    // Next id in string form, e.g. nextString("ORD-") -> "ORD-01HV3K8Q2M0A1"
+    public String nextString(String prefix) {
+        return format(prefix, nextId());
+    }
+
+    private void refill(Block block, long now) {
+        // grow while the thread keeps exhausting its block within one millisecond, shrink when idle
+        if (block.next >= block.end && block.millis >= now) {
+            block.size = Math.min(MAX_BLOCK, block.size * 2);
+        } else if (block.end - block.next > block.size / 2) {
+            block.size = Math.max(1, block.size / 2);
+        }
+        while (true) {
+            long current = state.get();
+            long millis = current >>> STATE_SHIFT;
+            int free = (int) (current & ((1 << STATE_SHIFT) - 1));
+            long blockMillis;
+            int start;
+            if (now > millis) {
+                blockMillis = now;
+                start = 0;
+            } else if (free < SEQUENCE_COUNT) {
+                blockMillis = millis;
+                start = free;
+            } else {
+                // this millisecond is used up (or the clock went back): borrow the next one
+                blockMillis = millis + 1;
+                start = 0;
+            }
+            int count = Math.min(block.size, SEQUENCE_COUNT - start);
+            if (state.compareAndSet(current, (blockMillis << STATE_SHIFT) | (start + count))) {
+                block.millis = blockMillis;
+                block.next = start;
+                block.end = start + count;
+                return;
+            }
+        }
+    }
+
+    // ------------------- Decoding and formatting -------------------
+
+    public static long timestampMillis(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    public static int nodeOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE_ID);
+    }
+
+    public static int sequenceOf(long id) {
+        return (int) (id & (SEQUENCE_COUNT - 1));
+    }
+
+    public static String format(long id) {
+        return format("", id);
+    }
+
+    public static String format(String prefix, long id) {
+        int p = prefix.length();
+        char[] chars = new char[p + ENCODED_LENGTH];
+        prefix.getChars(0, p, chars, 0);
+        for (int i = chars.length - 1; i >= p; i--) {
+            chars[i] = BASE32[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    // Inverse of format; anything up to the last '-' is taken as a prefix
+    public static long parse(String s) {
+        if (s == null) {
+            throw new IllegalArgumentException("Id cannot be null");
+        }
+        String code = s.substring(s.lastIndexOf('-') + 1);
+        if (code.length() != ENCODED_LENGTH) {
+            throw new IllegalArgumentException("Not a generated id: " + s);
+        }
+        long id = 0;
+        for (int i = 0; i < ENCODED_LENGTH; i++) {
+            int v = decode(Character.toUpperCase(code.charAt(i)));
+            if (v < 0 || (i == 0 && v > 15)) {
+                throw new IllegalArgumentException("Not a generated id: " + s);
+            }
+            id = (id << 5) | v;
+        }
+        return id;
+    }
+
+    private static int decode(char c) {
+        // Crockford: O reads as 0, I and L as 1
+        if (c == 'O') return 0;
+        if (c == 'I' || c == 'L') return 1;
+        for (int i = 0; i < BASE32.length; i++) {
+            if (BASE32[i] == c) return i;
+        }
+        return -1;
+    }
+
+    private static int defaultNodeId() {
+        String configured = System.getenv("DISPATCHER_NODE_ID");
+        if (configured != null && !configured.trim().isEmpty()) {
+            try {
+                int id = Integer.parseInt(configured.trim());
+                if (id >= 0 && id <= MAX_NODE_ID) return id;
+            } catch (NumberFormatException ignored) {
+                // fall back to a derived id
+            }
+            System.out.println("IdGenerator: ignoring invalid DISPATCHER_NODE_ID " + configured);
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "localhost";
+        }
+        int h = host.hashCode() * 31 + Long.hashCode(ProcessHandle.current().pid());
+        h ^= (h >>> 16);
+        return h & MAX_NODE_ID;
+    }
+}
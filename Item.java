@@ -32,6 +32,25 @@ public class Item {
         // Additional logic to update the database can be added here
     }
 
+    // One products row; rows without a name are skipped
+    static Item readRow(JsonReader reader) {
+        Integer id = null;
+        String name = null;
+        double price = 0.0;
+        int stock = 0;
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "product_id": id = reader.nextInt(0); break;
+                case "product_name": name = reader.nextString(); break;
+                case "unit_price": price = reader.nextDouble(0.0); break;
+                case "stock": stock = reader.nextInt(0); break;
+                default: reader.skipValue();
+            }
+        }
+        if (name == null) return null;
+        return new Item(id, name, price, stock);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
@@ -0,0 +1,486 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ Append-only, memory-mapped journal of driver registrations and
+ availability changes and job creation / assignment / status / reschedule
+ events. Attach it to a
+ DeliveryManager to record changes; replayInto() rebuilds a manager from
+ the latest snapshot plus the journal tail.
+
+ Layout: a 16-byte header (magic, version), then records of
+   int length | long sequence | byte type | long timestampMillis | payload
+ The length is written last, and a zero length after the last record marks
+ the end, so a torn append is ignored on the next open.
+
+ compact() writes every driver and job as a snapshot (<file>.snapshot,
+ replaced atomically) and empties the journal. Replay skips journal events
+ already covered by the snapshot's sequence number. With compactEvery > 0
+ compaction runs in the background once that many events have accumulated.
+*/
+public class JobJournal implements AutoCloseable {
+    private static final int MAGIC = 0x4A4F424A; // "JOBJ"
+    private static final int SNAPSHOT_MAGIC = 0x4A4F4253; // "JOBS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_OVERHEAD = 4 + 8 + 1 + 8;
+    private static final long INITIAL_MAP_SIZE = 16L * 1024 * 1024;
+
+    private static final byte DRIVER = 1;
+    private static final byte JOB = 2;
+    private static final byte JOB_ASSIGNED = 3;
+    private static final byte JOB_STATUS = 4;
+    private static final byte JOB_RESCHEDULED = 5;
+    private static final byte DRIVER_AVAILABILITY = 6;
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final DeliveryJob.DeliveryStatus[] STATUSES = DeliveryJob.DeliveryStatus.values();
+
+    private final Path file;
+    private final Path snapshotFile;
+    private final FileChannel channel;
+    private MappedByteBuffer mapped;
+    private int writePosition;
+    private long lastSequence;
+    private long eventsSinceSnapshot;
+    private final Encoder encoder = new Encoder();
+
+    private final long compactEvery;
+    private volatile DeliveryManager boundManager;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private ExecutorService compactor;
+
+    public static JobJournal open(Path file) throws IOException {
+        return new JobJournal(file, 0);
+    }
+
+    public static JobJournal open(Path file, long compactEvery) throws IOException {
+        return new JobJournal(file, compactEvery);
+    }
+
+    private JobJournal(Path file, long compactEvery) throws IOException {
+        this.file = file;
+        this.snapshotFile = file.resolveSibling(file.getFileName() + ".snapshot");
+        this.compactEvery = compactEvery;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        long size = Math.max(channel.size(), INITIAL_MAP_SIZE);
+        this.mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (mapped.getInt(0) == 0) {
+            mapped.putInt(0, MAGIC);
+            mapped.putInt(4, VERSION);
+            mapped.putInt(HEADER_SIZE, 0);
+        } else if (mapped.getInt(0) != MAGIC) {
+            throw new IOException("Not a job journal: " + file);
+        }
+        this.lastSequence = readSnapshotSequence();
+        scanToEnd();
+    }
+
+    // Finds the end of the journal and the highest sequence already used
+    private void scanToEnd() {
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_OVERHEAD <= mapped.capacity()) {
+            int length = mapped.getInt(pos);
+            if (length <= 0 || pos + 4 + length > mapped.capacity()) break;
+            lastSequence = Math.max(lastSequence, mapped.getLong(pos + 4));
+            eventsSinceSnapshot++;
+            pos += 4 + length;
+        }
+        writePosition = pos;
+    }
+
+    void bind(DeliveryManager manager) {
+        this.boundManager = manager;
+    }
+
+    // ------------------- Recording -------------------
+    public void recordDriverRegistered(DeliveryDriver driver) {
+        synchronized (this) {
+            encoder.begin();
+            writeDriver(encoder, driver);
+            append(DRIVER);
+        }
+        maybeCompact();
+    }
+
+    public void recordDriverAvailability(String driverId, boolean available) {
+        synchronized (this) {
+            encoder.begin();
+            encoder.putString(driverId);
+            encoder.ensure(1);
+            encoder.buffer.put((byte) (available ? 1 : 0));
+            append(DRIVER_AVAILABILITY);
+        }
+        maybeCompact();
+    }
+
+    public void recordJobCreated(DeliveryJob job) {
+        synchronized (this) {
+            encoder.begin();
+            writeJob(encoder, job);
+            append(JOB);
+        }
+        maybeCompact();
+    }
+
+    public void recordJobAssigned(String jobId, String driverId) {
+        synchronized (this) {
+            encoder.begin();
+            encoder.putString(jobId);
+            encoder.putString(driverId);
+            append(JOB_ASSIGNED);
+        }
+        maybeCompact();
+    }
+
+    public void recordStatusChanged(String jobId, DeliveryJob.DeliveryStatus status) {
+        synchronized (this) {
+            encoder.begin();
+            encoder.putString(jobId);
+            encoder.ensure(1);
+            encoder.buffer.put((byte) status.ordinal());
+            append(JOB_STATUS);
+        }
+        maybeCompact();
+    }
+
+    public void recordJobRescheduled(String jobId, LocalDateTime deliveryDate) {
+        synchronized (this) {
+            encoder.begin();
+            encoder.putString(jobId);
+            encoder.putDateTime(deliveryDate);
+            append(JOB_RESCHEDULED);
+        }
+        maybeCompact();
+    }
+
+    // Copies the encoded payload into the mapped file; callers hold the lock
+    private void append(byte type) {
+        ByteBuffer payload = encoder.buffer;
+        payload.flip();
+        int length = 8 + 1 + 8 + payload.remaining();
+        ensureCapacity(writePosition + 4 + length + 4);
+        int pos = writePosition;
+        long sequence = ++lastSequence;
+        mapped.putInt(pos + 4 + length, 0); // end marker
+        mapped.putLong(pos + 4, sequence);
+        mapped.put(pos + 12, type);
+        mapped.putLong(pos + 13, System.currentTimeMillis());
+        ByteBuffer target = mapped.duplicate();
+        target.position(pos + 21);
+        target.put(payload);
+        mapped.putInt(pos, length); // publish the record last
+        writePosition = pos + 4 + length;
+        eventsSinceSnapshot++;
+    }
+
+    private void ensureCapacity(long needed) {
+        if (needed <= mapped.capacity()) return;
+        if (needed > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Journal is full; compact it before appending more events");
+        }
+        long newSize = Math.min(Integer.MAX_VALUE, Math.max(needed, (long) mapped.capacity() * 2));
+        try {
+            mapped.force();
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow journal " + file, e);
+        }
+    }
+
+    // Flushes mapped pages to disk
+    public synchronized void sync() {
+        mapped.force();
+    }
+
+    public synchronized long getEventsSinceSnapshot() {
+        return eventsSinceSnapshot;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    // ------------------- Compaction -------------------
+    private void maybeCompact() {
+        DeliveryManager manager = boundManager;
+        if (compactEvery <= 0 || manager == null || !compacting.compareAndSet(false, true)) return;
+        boolean due;
+        synchronized (this) {
+            due = eventsSinceSnapshot >= compactEvery;
+        }
+        if (!due) {
+            compacting.set(false);
+            return;
+        }
+        synchronized (this) {
+            if (compactor == null) {
+                compactor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "job-journal-compactor");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+        }
+        compactor.execute(() -> {
+            try {
+                compact(manager);
+            } catch (Exception e) {
+                System.out.println("Journal compaction failed: " + e.getMessage());
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    // Writes the manager's current drivers and jobs as a snapshot, then empties the journal.
+    // Appends wait while this runs; changes that race with it are re-applied on replay,
+    // which is harmless because replayed events are idempotent.
+    public synchronized void compact(DeliveryManager manager) throws IOException {
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            header.putInt(SNAPSHOT_MAGIC).putInt(VERSION).putLong(lastSequence).flip();
+            writeFully(out, header);
+            Encoder snapshot = new Encoder();
+            for (DeliveryDriver driver : manager.getAllDrivers()) {
+                snapshot.begin();
+                writeDriver(snapshot, driver);
+                writeSnapshotRecord(out, DRIVER, snapshot.buffer);
+            }
+            for (DeliveryJob job : manager.getAllJobs()) {
+                snapshot.begin();
+                writeJob(snapshot, job);
+                writeSnapshotRecord(out, JOB, snapshot.buffer);
+            }
+            out.force(true);
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        mapped.putInt(HEADER_SIZE, 0);
+        writePosition = HEADER_SIZE;
+        eventsSinceSnapshot = 0;
+        mapped.force();
+    }
+
+    private static void writeSnapshotRecord(FileChannel out, byte type, ByteBuffer payload) throws IOException {
+        payload.flip();
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.putInt(1 + payload.remaining()).put(type).flip();
+        writeFully(out, header);
+        writeFully(out, payload);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private long readSnapshotSequence() throws IOException {
+        if (!Files.exists(snapshotFile)) return 0;
+        try (FileChannel in = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            while (header.hasRemaining() && in.read(header) >= 0) { }
+            header.flip();
+            if (header.remaining() < 16 || header.getInt() != SNAPSHOT_MAGIC) return 0;
+            header.getInt();
+            return header.getLong();
+        }
+    }
+
+    // ------------------- Replay -------------------
+
+    // Loads the snapshot and then the journal events newer than it into an empty manager.
+    // Returns the number of journal events applied. Attach the journal afterwards.
+    public synchronized long replayInto(DeliveryManager manager) throws IOException {
+        if (manager.getJournal() != null) {
+            throw new IllegalStateException("Detach the journal before replaying into a manager");
+        }
+        long snapshotSequence = 0;
+        if (Files.exists(snapshotFile)) {
+            try (FileChannel in = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+                ByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                if (data.remaining() >= 16 && data.getInt() == SNAPSHOT_MAGIC) {
+                    data.getInt();
+                    snapshotSequence = data.getLong();
+                    while (data.remaining() >= 5) {
+                        int length = data.getInt();
+                        byte type = data.get();
+                        ByteBuffer payload = data.slice();
+                        payload.limit(length - 1);
+                        apply(manager, type, payload);
+                        data.position(data.position() + length - 1);
+                    }
+                }
+            }
+        }
+
+        long applied = 0;
+        ByteBuffer view = mapped.duplicate();
+        int pos = HEADER_SIZE;
+        while (pos < writePosition) {
+            int length = view.getInt(pos);
+            long sequence = view.getLong(pos + 4);
+            byte type = view.get(pos + 12);
+            if (sequence > snapshotSequence) {
+                view.limit(pos + 4 + length).position(pos + 21);
+                apply(manager, type, view.slice());
+                view.clear();
+                applied++;
+            }
+            pos += 4 + length;
+        }
+        return applied;
+    }
+
+    private static void apply(DeliveryManager manager, byte type, ByteBuffer in) {
+        switch (type) {
+            case DRIVER: {
+                DeliveryDriver driver = new DeliveryDriver(getString(in), getString(in), getString(in),
+                    getString(in), getString(in));
+                driver.setAvailable(in.get() != 0);
+                manager.registerDriver(driver);
+                break;
+            }
+            case JOB: {
+                String jobId = getString(in);
+                String customer = getString(in);
+                String address = getString(in);
+                String goods = getString(in);
+                double total = in.getDouble();
+                double paid = in.getDouble();
+                LocalDateTime created = getDateTime(in);
+                LocalDateTime delivery = getDateTime(in);
+                String driverId = getString(in);
+                DeliveryJob.DeliveryStatus status = STATUSES[in.get()];
+                manager.restoreJob(DeliveryJob.restore(jobId, customer, address, goods, total, paid,
+                    created, delivery, driverId, status));
+                break;
+            }
+            case DRIVER_AVAILABILITY: {
+                String driverId = getString(in);
+                boolean available = in.get() != 0;
+                manager.findDriverById(driverId).ifPresent(d -> d.setAvailable(available));
+                break;
+            }
+            case JOB_ASSIGNED:
+                manager.assignJobToDriver(getString(in), getString(in));
+                break;
+            case JOB_STATUS:
+                manager.updateJobStatus(getString(in), STATUSES[in.get()]);
+                break;
+            case JOB_RESCHEDULED:
+                manager.restoreSchedule(getString(in), getDateTime(in));
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    // ------------------- Encoding -------------------
+    private static void writeDriver(Encoder e, DeliveryDriver driver) {
+        e.putString(driver.getDriverId());
+        e.putString(driver.getName());
+        e.putString(driver.getContactNumber());
+        e.putString(driver.getLicenseNumber());
+        e.putString(driver.getVehicleInfo());
+        e.ensure(1);
+        e.buffer.put((byte) (driver.isAvailable() ? 1 : 0));
+    }
+
+    private static void writeJob(Encoder e, DeliveryJob job) {
+        e.putString(job.getJobId());
+        e.putString(job.getCustomerName());
+        e.putString(job.getDeliveryAddress());
+        e.putString(job.getGoodsDescription());
+        e.ensure(16);
+        e.buffer.putDouble(job.getTotalAmount());
+        e.buffer.putDouble(job.getAmountPaid());
+        e.putDateTime(job.getCreatedDate());
+        e.putDateTime(job.getDeliveryDate());
+        e.putString(job.getAssignedDriverId());
+        e.ensure(1);
+        e.buffer.put((byte) job.getStatus().ordinal());
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static LocalDateTime getDateTime(ByteBuffer in) {
+        long seconds = in.getLong();
+        int nanos = in.getInt();
+        return seconds == NO_DATE ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    // Reusable growable heap buffer for one record's payload
+    private static final class Encoder {
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+
+        void begin() {
+            buffer.clear();
+        }
+
+        void ensure(int extra) {
+            if (buffer.remaining() < extra) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+        }
+
+        void putString(String s) {
+            if (s == null) {
+                ensure(4);
+                buffer.putInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+
+        void putDateTime(LocalDateTime dt) {
+            ensure(12);
+            if (dt == null) {
+                buffer.putLong(NO_DATE).putInt(0);
+            } else {
+                buffer.putLong(dt.toEpochSecond(ZoneOffset.UTC)).putInt(dt.getNano());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (compactor != null) {
+            compactor.shutdown();
+        }
+        mapped.force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
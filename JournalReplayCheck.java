@@ -0,0 +1,142 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/*
+ Replay check for JobJournal. Records a workload through a manager with the
+ journal attached (drivers registered and toggled, jobs created, assigned,
+ moved through their statuses and rescheduled), then replays the journal
+ into a fresh manager and times it. The journal is then compacted, a few
+ more changes are recorded on top, and it is replayed again from the
+ snapshot plus that tail. Each rebuilt manager must match the
+ original's per-status job counts, active jobs per driver and driver
+ availability. Works in a temporary directory that is deleted afterwards;
+ exits with status 1 on a mismatch.
+ Run: java JournalReplayCheck [jobs] [drivers]
+*/
+public class JournalReplayCheck {
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 130_000;
+        int drivers = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        Path dir = Files.createTempDirectory("journal-check");
+        Path file = dir.resolve("jobs.journal");
+        boolean ok;
+        try {
+            DeliveryManager original = new DeliveryManager();
+            long start = System.nanoTime();
+            try (JobJournal journal = JobJournal.open(file)) {
+                original.attachJournal(journal);
+                record(original, jobs, drivers);
+                journal.sync();
+                System.out.printf("recorded %d events in %.2f s%n", journal.getLastSequence(),
+                    (System.nanoTime() - start) / 1e9);
+            }
+            String expected = summary(original);
+
+            DeliveryManager replayed = new DeliveryManager();
+            long applied;
+            try (JobJournal journal = JobJournal.open(file)) {
+                start = System.nanoTime();
+                applied = journal.replayInto(replayed);
+                System.out.printf("replayed %d events into a fresh manager in %.2f s%n", applied,
+                    (System.nanoTime() - start) / 1e9);
+            }
+            ok = compare("journal replay", expected, summary(replayed));
+
+            try (JobJournal journal = JobJournal.open(file)) {
+                journal.compact(replayed);
+                replayed.attachJournal(journal);
+                // cancel every tenth job still pending
+                int n = 0;
+                for (DeliveryJob job : replayed.getJobsByStatus(DeliveryJob.DeliveryStatus.PENDING)) {
+                    if (n++ % 10 == 0) replayed.updateJobStatus(job.getJobId(), DeliveryJob.DeliveryStatus.CANCELLED);
+                }
+                replayed.attachJournal(null);
+            }
+            expected = summary(replayed);
+
+            DeliveryManager fromSnapshot = new DeliveryManager();
+            try (JobJournal journal = JobJournal.open(file)) {
+                start = System.nanoTime();
+                applied = journal.replayInto(fromSnapshot);
+                System.out.printf("replayed the snapshot plus %d journal events in %.2f s%n", applied,
+                    (System.nanoTime() - start) / 1e9);
+            }
+            ok &= compare("snapshot replay", expected, summary(fromSnapshot));
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    // About three events per job; a quarter of the jobs stay pending and are rescheduled instead
+    private static void record(DeliveryManager manager, int jobs, int drivers) {
+        for (int i = 0; i < drivers; i++) {
+            manager.registerDriver(new DeliveryDriver("DRV-" + i, "Driver " + i, "555-01" + i, "LIC-" + i, "Truck " + i));
+        }
+        int perDay = drivers * manager.getMaxJobsPerDriverPerDay();
+        LocalDateTime firstDay = LocalDateTime.now().plusDays(1).withHour(9).withMinute(0).withSecond(0).withNano(0);
+        for (int i = 0; i < jobs; i++) {
+            DeliveryJob job = new DeliveryJob("Customer " + i, i + " Main St, Kingston",
+                "10x 2x4 Lumber", 25000.00, 10000.00);
+            job.setDeliveryDate(firstDay.plusDays(i / perDay).plusMinutes(i % 480));
+            manager.createDeliveryJob(job);
+            String jobId = job.getJobId();
+            switch (i % 4) {
+                case 0:
+                    manager.rescheduleJob(jobId, job.getDeliveryDate().plusMinutes(30));
+                    manager.rescheduleJob(jobId, job.getDeliveryDate().plusMinutes(30));
+                    break;
+                case 1:
+                    manager.assignJobToDriver(jobId, "DRV-" + (i % drivers));
+                    manager.updateJobStatus(jobId, DeliveryJob.DeliveryStatus.IN_TRANSIT);
+                    break;
+                case 2:
+                    manager.assignJobToDriver(jobId, "DRV-" + (i % drivers));
+                    manager.updateJobStatus(jobId, DeliveryJob.DeliveryStatus.IN_TRANSIT);
+                    manager.updateJobStatus(jobId, DeliveryJob.DeliveryStatus.DELIVERED);
+                    break;
+                default:
+                    manager.assignJobToDriver(jobId, "DRV-" + (i % drivers));
+                    manager.assignJobToDriver(jobId, "DRV-" + ((i + 1) % drivers));
+                    manager.updateJobStatus(jobId, DeliveryJob.DeliveryStatus.CANCELLED);
+            }
+            if (i % 1000 == 0) {
+                manager.findDriverById("DRV-" + (i / 1000 % drivers)).ifPresent(d -> d.setAvailable(!d.isAvailable()));
+            }
+        }
+    }
+
+    private static String summary(DeliveryManager manager) {
+        Map<DeliveryJob.DeliveryStatus, Integer> byStatus = new EnumMap<>(DeliveryJob.DeliveryStatus.class);
+        for (DeliveryJob.DeliveryStatus status : DeliveryJob.DeliveryStatus.values()) {
+            byStatus.put(status, manager.getJobsByStatus(status).size());
+        }
+        long active = 0, available = 0, hash = 17;
+        for (DeliveryDriver driver : manager.getAllDrivers()) {
+            int held = 0;
+            for (DeliveryJob job : driver.getAssignedJobs()) {
+                if (DriverCapacityLedger.isActive(job.getStatus())) held++;
+            }
+            active += held;
+            if (driver.isAvailable()) available++;
+            hash = 31 * hash + driver.getDriverId().hashCode() * 31L + held * 2 + (driver.isAvailable() ? 1 : 0);
+        }
+        return manager.getAllJobs().size() + " jobs " + byStatus + ", " + manager.getAllDrivers().size()
+            + " drivers (" + available + " available) holding " + active + " active jobs, driver hash "
+            + Long.toHexString(hash);
+    }
+
+    private static boolean compare(String label, String expected, String actual) {
+        boolean match = expected.equals(actual);
+        System.out.println(label + (match ? " matches: " + actual : " MISMATCH\n  expected " + expected + "\n  actual   " + actual));
+        return match;
+    }
+}
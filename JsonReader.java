@@ -0,0 +1,411 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ Pull-style JSON reader used to parse Supabase/PostgREST response bodies.
+ The body is walked once, left to right; callers step through it with
+ beginArray/beginObject, hasNext, nextName and the next* value methods and
+ skip anything they do not need with skipValue. String values are decoded
+ fully, including unicode escapes, and strings without escapes are taken
+ as a single substring without an intermediate buffer.
+
+ Malformed input throws IllegalArgumentException with the offending offset.
+*/
+public final class JsonReader {
+    public enum Token { BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT }
+
+    // Maps the fields of one object to a row; the reader is positioned after '{'
+    public interface RowReader<T> {
+        T read(JsonReader reader);
+    }
+
+    private final String json;
+    private final int length;
+    private int pos;
+
+    // Container stack: scope kind, elements started so far, and whether one is in progress
+    private static final int IN_ARRAY = 1, IN_OBJECT = 2;
+    private int[] scopes = new int[16];
+    private int[] elementCounts = new int[16];
+    private boolean[] elementOpen = new boolean[16];
+    private int depth;
+    private boolean expectingValueAfterName;
+
+    private final StringBuilder scratch = new StringBuilder();
+
+    public JsonReader(String json) {
+        if (json == null) {
+            throw new IllegalArgumentException("JSON input cannot be null");
+        }
+        this.json = json;
+        this.length = json.length();
+    }
+
+    // Reads a top-level array of objects, mapping each one through rowReader
+    public static <T> List<T> readArray(String json, RowReader<T> rowReader) {
+        List<T> rows = new ArrayList<>();
+        if (json == null || json.isBlank()) return rows;
+        JsonReader reader = new JsonReader(json);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == Token.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            T row = rowReader.read(reader);
+            // Let row readers stop early; anything they left is skipped
+            while (reader.hasNext()) {
+                reader.nextName();
+                reader.skipValue();
+            }
+            reader.endObject();
+            if (row != null) rows.add(row);
+        }
+        reader.endArray();
+        return rows;
+    }
+
+    // First row of a top-level array, or null when the array is empty
+    public static <T> T readFirst(String json, RowReader<T> rowReader) {
+        List<T> rows = readArray(json, rowReader);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    // Maps a single top-level object through rowReader
+    public static <T> T readObject(String json, RowReader<T> rowReader) {
+        JsonReader reader = new JsonReader(json);
+        reader.beginObject();
+        T row = rowReader.read(reader);
+        while (reader.hasNext()) {
+            reader.nextName();
+            reader.skipValue();
+        }
+        reader.endObject();
+        return row;
+    }
+
+    // ------------------- Structure -------------------
+
+    public void beginArray() {
+        beforeValue();
+        if (json.charAt(pos) != '[') throw error("Expected '['");
+        pos++;
+        push(IN_ARRAY);
+    }
+
+    public void endArray() {
+        pop(IN_ARRAY, ']');
+    }
+
+    public void beginObject() {
+        beforeValue();
+        if (json.charAt(pos) != '{') throw error("Expected '{'");
+        pos++;
+        push(IN_OBJECT);
+    }
+
+    public void endObject() {
+        pop(IN_OBJECT, '}');
+    }
+
+    // True while the current array/object has another element or field
+    public boolean hasNext() {
+        skipWhitespace();
+        if (pos >= length) return false;
+        if (depth > 0 && elementOpen[depth - 1]) return true;
+        char c = json.charAt(pos);
+        return c != ']' && c != '}';
+    }
+
+    public Token peek() {
+        skipWhitespace();
+        if (pos >= length) return Token.END_DOCUMENT;
+        char c = json.charAt(pos);
+        if (c == ']') return Token.END_ARRAY;
+        if (c == '}') return Token.END_OBJECT;
+        boolean inObject = depth > 0 && scopes[depth - 1] == IN_OBJECT;
+        if (!inObject || !expectingValueAfterName) {
+            openElement();
+            c = json.charAt(pos);
+        }
+        switch (c) {
+            case '[': return Token.BEGIN_ARRAY;
+            case '{': return Token.BEGIN_OBJECT;
+            case '"': return inObject && !expectingValueAfterName ? Token.NAME : Token.STRING;
+            case 't':
+            case 'f': return Token.BOOLEAN;
+            case 'n': return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) return Token.NUMBER;
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    public String nextName() {
+        if (depth == 0 || scopes[depth - 1] != IN_OBJECT || expectingValueAfterName) {
+            throw error("Expected a value, not a field name");
+        }
+        openElement();
+        if (json.charAt(pos) != '"') throw error("Expected field name");
+        String name = readQuoted();
+        skipWhitespace();
+        if (pos >= length || json.charAt(pos) != ':') throw error("Expected ':'");
+        pos++;
+        expectingValueAfterName = true;
+        return name;
+    }
+
+    // ------------------- Values -------------------
+
+    // String value, raw text for numbers/booleans, or null for JSON null
+    public String nextString() {
+        beforeValue();
+        String value = readScalar();
+        afterValue();
+        return value;
+    }
+
+    // Numbers may also arrive quoted (e.g. "12.50"); null or an empty string yields ifNull
+    public double nextDouble(double ifNull) {
+        beforeValue();
+        String s = readScalar();
+        afterValue();
+        if (s == null || s.isBlank()) return ifNull;
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException e) {
+            throw error("Expected a number but found \"" + s + "\"");
+        }
+    }
+
+    public int nextInt(int ifNull) {
+        beforeValue();
+        char c = json.charAt(pos);
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            // Fast path for plain integers, parsed in place without a substring
+            int start = pos;
+            boolean negative = c == '-';
+            if (negative) pos++;
+            long value = 0;
+            int digits = 0;
+            while (pos < length && digits < 11) {
+                char d = json.charAt(pos);
+                if (d < '0' || d > '9') break;
+                value = value * 10 + (d - '0');
+                pos++;
+                digits++;
+            }
+            if (digits > 0 && digits < 11 && (pos >= length || !isNumberChar(json.charAt(pos)))) {
+                afterValue();
+                return toInt(negative ? -value : value);
+            }
+            pos = start;
+        }
+        String s = readScalar();
+        afterValue();
+        if (s == null || s.isBlank()) return ifNull;
+        try {
+            return toInt(Math.round(Double.parseDouble(s.trim())));
+        } catch (NumberFormatException e) {
+            throw error("Expected a number but found \"" + s + "\"");
+        }
+    }
+
+    // Accepts true/false, their quoted forms and 1/0; null is false
+    public boolean nextBoolean() {
+        String s = nextString();
+        return "true".equalsIgnoreCase(s) || "1".equals(s);
+    }
+
+    public void skipValue() {
+        beforeValue();
+        char c = json.charAt(pos);
+        if (c == '[' || c == '{') {
+            // Skip a whole container by bracket nesting, stepping over strings;
+            // its contents are not validated
+            int nesting = 0;
+            do {
+                c = json.charAt(pos);
+                if (c == '"') {
+                    skipQuoted();
+                    continue;
+                }
+                if (c == '[' || c == '{') nesting++;
+                else if (c == ']' || c == '}') nesting--;
+                pos++;
+            } while (nesting > 0 && pos < length);
+            if (nesting > 0) throw error("Unterminated container");
+        } else if (c == '"') {
+            skipQuoted();
+        } else {
+            readScalar();
+        }
+        afterValue();
+    }
+
+    // ------------------- Internals -------------------
+
+    private String readScalar() {
+        char c = json.charAt(pos);
+        if (c == '"') return readQuoted();
+        if (c == 'n') {
+            readLiteral("null");
+            return null;
+        }
+        if (c == 't') {
+            readLiteral("true");
+            return "true";
+        }
+        if (c == 'f') {
+            readLiteral("false");
+            return "false";
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            int start = pos;
+            while (pos < length && isNumberChar(json.charAt(pos))) pos++;
+            return json.substring(start, pos);
+        }
+        throw error("Unexpected character '" + c + "'");
+    }
+
+    // Positions on the first character of a value, consuming a preceding ',' in arrays
+    private void beforeValue() {
+        if (depth > 0 && scopes[depth - 1] == IN_OBJECT) {
+            if (!expectingValueAfterName) throw error("Expected a field name before the value");
+            skipWhitespace();
+        } else {
+            openElement();
+        }
+        if (pos >= length) throw error("Unexpected end of input");
+    }
+
+    private void afterValue() {
+        if (depth == 0) return;
+        elementOpen[depth - 1] = false;
+        expectingValueAfterName = false;
+    }
+
+    // Starts the next array element or object field; idempotent until afterValue
+    private void openElement() {
+        skipWhitespace();
+        if (depth == 0 || elementOpen[depth - 1]) return;
+        if (elementCounts[depth - 1] > 0) {
+            if (pos >= length || json.charAt(pos) != ',') throw error("Expected ','");
+            pos++;
+            skipWhitespace();
+        }
+        if (pos >= length) throw error("Unexpected end of input");
+        elementCounts[depth - 1]++;
+        elementOpen[depth - 1] = true;
+    }
+
+    private void push(int scope) {
+        if (depth == scopes.length) {
+            scopes = Arrays.copyOf(scopes, depth * 2);
+            elementCounts = Arrays.copyOf(elementCounts, depth * 2);
+            elementOpen = Arrays.copyOf(elementOpen, depth * 2);
+        }
+        scopes[depth] = scope;
+        elementCounts[depth] = 0;
+        elementOpen[depth] = false;
+        expectingValueAfterName = false;
+        depth++;
+    }
+
+    private void pop(int scope, char close) {
+        skipWhitespace();
+        if (depth == 0 || scopes[depth - 1] != scope) throw error("Mismatched '" + close + "'");
+        if (elementOpen[depth - 1] || expectingValueAfterName) throw error("Expected a value before '" + close + "'");
+        if (pos >= length || json.charAt(pos) != close) throw error("Expected '" + close + "'");
+        pos++;
+        depth--;
+        afterValue();
+    }
+
+    private String readQuoted() {
+        int start = ++pos;
+        // Fast path: no escapes, so the value is a plain substring
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c == '"') {
+                return json.substring(start, pos++);
+            }
+            if (c == '\\') break;
+            pos++;
+        }
+        if (pos >= length) throw error("Unterminated string");
+        scratch.setLength(0);
+        scratch.append(json, start, pos);
+        while (pos < length) {
+            char c = json.charAt(pos++);
+            if (c == '"') return scratch.toString();
+            if (c != '\\') {
+                scratch.append(c);
+                continue;
+            }
+            if (pos >= length) break;
+            char e = json.charAt(pos++);
+            switch (e) {
+                case '"': scratch.append('"'); break;
+                case '\\': scratch.append('\\'); break;
+                case '/': scratch.append('/'); break;
+                case 'b': scratch.append('\b'); break;
+                case 'f': scratch.append('\f'); break;
+                case 'n': scratch.append('\n'); break;
+                case 'r': scratch.append('\r'); break;
+                case 't': scratch.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > length) throw error("Truncated \\u escape");
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(json.charAt(pos++), 16);
+                        if (digit < 0) throw error("Invalid \\u escape");
+                        code = (code << 4) | digit;
+                    }
+                    scratch.append((char) code);
+                    break;
+                default:
+                    throw error("Invalid escape '\\" + e + "'");
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private void skipQuoted() {
+        pos++;
+        while (pos < length) {
+            char c = json.charAt(pos++);
+            if (c == '"') return;
+            if (c == '\\') pos++;
+        }
+        throw error("Unterminated string");
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    private void readLiteral(String literal) {
+        if (!json.startsWith(literal, pos)) throw error("Expected " + literal);
+        pos += literal.length();
+    }
+
+    private void skipWhitespace() {
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return;
+            pos++;
+        }
+    }
+
+    private int toInt(long value) {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) throw error("Integer out of range");
+        return (int) value;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at offset " + pos);
+    }
+}
@@ -0,0 +1,377 @@
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/*
+ Streaming JSON writer that encodes straight into a growable UTF-8 byte
+ buffer. Entities write their fields with name(...).value(...); commas are
+ inserted automatically, and strings are escaped completely (quotes,
+ backslashes and all control characters). The finished buffer is handed to
+ HttpClient with toBodyPublisher, so a request body is never built as a
+ String first.
+
+ forThread() returns a per-thread writer that is reset and reused, in the
+ same way MessageTemplate reuses its render buffer. Its bytes are only valid
+ until the next forThread() call on that thread; use toByteArray() when the
+ body has to outlive that (for example an async send).
+*/
+public final class JsonWriter {
+    // Writes one entity as a JSON object; entity::writeJson fits this shape
+    public interface RowWriter<T> {
+        void write(T row, JsonWriter out);
+    }
+
+    private static final int MAX_RETAINED_BUFFER = 1 << 20;
+    private static final ThreadLocal<JsonWriter> PER_THREAD = ThreadLocal.withInitial(() -> new JsonWriter(1024));
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    private byte[] buf;
+    private int count;
+    // true when the next element in the current container needs a leading ','
+    private boolean needsComma;
+
+    public JsonWriter() {
+        this(256);
+    }
+
+    public JsonWriter(int initialCapacity) {
+        this.buf = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public static JsonWriter forThread() {
+        JsonWriter writer = PER_THREAD.get();
+        if (writer.buf.length > MAX_RETAINED_BUFFER) {
+            writer = new JsonWriter(1024);
+            PER_THREAD.set(writer);
+        }
+        writer.reset();
+        return writer;
+    }
+
+    public JsonWriter reset() {
+        count = 0;
+        needsComma = false;
+        return this;
+    }
+
+    // ------------------- Structure -------------------
+
+    public JsonWriter beginArray() {
+        separator();
+        write('[');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        write(']');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter beginObject() {
+        separator();
+        write('{');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        write('}');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter name(String name) {
+        separator();
+        writeQuoted(name);
+        write(':');
+        needsComma = false;
+        return this;
+    }
+
+    // Writes rows as a JSON array, one object per row
+    public <T> JsonWriter array(Iterable<? extends T> rows, RowWriter<T> rowWriter) {
+        beginArray();
+        for (T row : rows) {
+            rowWriter.write(row, this);
+        }
+        return endArray();
+    }
+
+    // ------------------- Values -------------------
+
+    // null is written as JSON null
+    public JsonWriter value(String s) {
+        separator();
+        if (s == null) {
+            write(NULL);
+        } else {
+            writeQuoted(s);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    // Same text as Double.toString; NaN and infinities have no JSON form and become null
+    public JsonWriter value(double d) {
+        separator();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            write(NULL);
+        } else if (d == (long) d && Math.abs(d) < 1e7) {
+            // Double.toString prints whole numbers below 10^7 as "<n>.0"
+            if (d == 0 && 1 / d < 0) write('-');
+            writeLong((long) d);
+            write('.');
+            write('0');
+        } else {
+            writeAscii(Double.toString(d));
+        }
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(long v) {
+        separator();
+        writeLong(v);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(boolean b) {
+        separator();
+        write(b ? TRUE : FALSE);
+        needsComma = true;
+        return this;
+    }
+
+    // Same text as DateTimeFormatter.ISO_OFFSET_DATE_TIME, written without a formatter;
+    // a null dateTime is written as JSON null
+    public JsonWriter value(LocalDateTime dateTime, ZoneOffset offset) {
+        if (dateTime == null) return nullValue();
+        int year = dateTime.getYear();
+        if (year < 0 || year > 9999) {
+            return value(OffsetDateTime.of(dateTime, offset).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        }
+        separator();
+        ensure(48);
+        buf[count++] = '"';
+        writeDigits(year, 4);
+        buf[count++] = '-';
+        writeDigits(dateTime.getMonthValue(), 2);
+        buf[count++] = '-';
+        writeDigits(dateTime.getDayOfMonth(), 2);
+        buf[count++] = 'T';
+        writeDigits(dateTime.getHour(), 2);
+        buf[count++] = ':';
+        writeDigits(dateTime.getMinute(), 2);
+        buf[count++] = ':';
+        writeDigits(dateTime.getSecond(), 2);
+        int nano = dateTime.getNano();
+        if (nano != 0) {
+            // fraction with trailing zeros dropped, as the ISO formatter prints it
+            int digits = 9;
+            while (nano % 10 == 0) {
+                nano /= 10;
+                digits--;
+            }
+            buf[count++] = '.';
+            writeDigits(nano, digits);
+        }
+        int totalSeconds = offset.getTotalSeconds();
+        if (totalSeconds == 0) {
+            buf[count++] = 'Z';
+        } else {
+            int abs = Math.abs(totalSeconds);
+            buf[count++] = (byte) (totalSeconds < 0 ? '-' : '+');
+            writeDigits(abs / 3600, 2);
+            buf[count++] = ':';
+            writeDigits((abs / 60) % 60, 2);
+            if (abs % 60 != 0) {
+                buf[count++] = ':';
+                writeDigits(abs % 60, 2);
+            }
+        }
+        buf[count++] = '"';
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter nullValue() {
+        separator();
+        write(NULL);
+        needsComma = true;
+        return this;
+    }
+
+    // Appends already-serialized JSON (one complete value) without re-escaping
+    public JsonWriter rawValue(String json) {
+        separator();
+        writeUtf8(json, false);
+        needsComma = true;
+        return this;
+    }
+
+    // ------------------- Output -------------------
+
+    public int size() {
+        return count;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    // Publishes the current buffer without copying; do not reuse the writer until the request is sent
+    public HttpRequest.BodyPublisher toBodyPublisher() {
+        return HttpRequest.BodyPublishers.ofByteArray(buf, 0, count);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, count, StandardCharsets.UTF_8);
+    }
+
+    // ------------------- Encoding -------------------
+
+    private void separator() {
+        if (needsComma) write(',');
+    }
+
+    private void writeQuoted(String s) {
+        write('"');
+        writeUtf8(s, true);
+        write('"');
+    }
+
+    // Encodes s as UTF-8, escaping JSON specials when escape is set.
+    // Unpaired surrogates become '?', matching String.getBytes(UTF_8).
+    private void writeUtf8(String s, boolean escape) {
+        int len = s.length();
+        ensure(len);
+        int i = 0;
+        // ASCII fast path: no escapes needed, copy byte per char
+        while (i < len) {
+            char c = s.charAt(i);
+            if (c >= 0x80 || (escape && (c < 0x20 || c == '"' || c == '\\'))) break;
+            buf[count++] = (byte) c;
+            i++;
+        }
+        for (; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (escape && (c < 0x20 || c == '"' || c == '\\')) {
+                    writeEscape(c);
+                } else {
+                    write((byte) c);
+                }
+            } else if (c < 0x800) {
+                ensure(2);
+                buf[count++] = (byte) (0xC0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                ensure(4);
+                buf[count++] = (byte) (0xF0 | (cp >> 18));
+                buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                write('?');
+            } else {
+                ensure(3);
+                buf[count++] = (byte) (0xE0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void writeEscape(char c) {
+        ensure(6);
+        buf[count++] = '\\';
+        switch (c) {
+            case '"': buf[count++] = '"'; break;
+            case '\\': buf[count++] = '\\'; break;
+            case '\n': buf[count++] = 'n'; break;
+            case '\r': buf[count++] = 'r'; break;
+            case '\t': buf[count++] = 't'; break;
+            case '\b': buf[count++] = 'b'; break;
+            case '\f': buf[count++] = 'f'; break;
+            default:
+                buf[count++] = 'u';
+                buf[count++] = '0';
+                buf[count++] = '0';
+                buf[count++] = HEX[c >> 4];
+                buf[count++] = HEX[c & 0xF];
+        }
+    }
+
+    // Zero-padded to width; the caller has already ensured capacity
+    private void writeDigits(int v, int width) {
+        for (int i = count + width - 1; i >= count; i--) {
+            buf[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        count += width;
+    }
+
+    private void writeLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            writeAscii(Long.toString(v));
+            return;
+        }
+        ensure(20);
+        if (v < 0) {
+            buf[count++] = '-';
+            v = -v;
+        }
+        int start = count;
+        do {
+            buf[count++] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        // digits were written least significant first
+        for (int lo = start, hi = count - 1; lo < hi; lo++, hi--) {
+            byte t = buf[lo];
+            buf[lo] = buf[hi];
+            buf[hi] = t;
+        }
+    }
+
+    private void writeAscii(String s) {
+        int len = s.length();
+        ensure(len);
+        for (int i = 0; i < len; i++) {
+            buf[count++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void write(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void write(char c) {
+        write((byte) c);
+    }
+
+    private void write(byte b) {
+        ensure(1);
+        buf[count++] = b;
+    }
+
+    private void ensure(int extra) {
+        if (count + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+        }
+    }
+}
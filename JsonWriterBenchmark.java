@@ -0,0 +1,104 @@
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+/*
+ Compares building a delivery_jobs request body the old way (StringBuilder
+ toJson, String.replace escaping, "[" + ... + "]", then the UTF-8 copy made
+ by BodyPublishers.ofString) with JsonWriter: bytes allocated and time per
+ body, for a single-row save and a 500-row batch.
+ Run: java JsonWriterBenchmark [iterations]
+*/
+public class JsonWriterBenchmark {
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        List<DeliveryJob> batch = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            DeliveryJob job = new DeliveryJob("ORD-" + (1000 + i), "Robert \"Bob\" Johnson", "123 Main St, Kingston",
+                "10x 2x4 Lumber, 5x 50kg Cement Bags", 25000.00, 10000.00);
+            job.setDeliveryDate(LocalDateTime.now().plusDays(1));
+            job.assignDriver("DRV-" + (i % 20));
+            batch.add(job);
+        }
+        List<DeliveryJob> single = batch.subList(0, 1);
+
+        // warm up both paths
+        for (int i = 0; i < 20_000; i++) {
+            legacyBody(single);
+            writerBody(single);
+        }
+
+        report("legacy toJson, 1 row  ", iterations, () -> legacyBody(single));
+        report("JsonWriter,    1 row  ", iterations, () -> writerBody(single));
+        int batchIterations = Math.max(1, iterations / 100);
+        report("legacy toJson, 500 rows", batchIterations, () -> legacyBody(batch));
+        report("JsonWriter,    500 rows", batchIterations, () -> writerBody(batch));
+    }
+
+    private static void report(String label, int iterations, IntSupplier build) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long sink = 0;
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += build.getAsInt();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        System.out.printf("%s: %10.1f ns/body, %10.1f bytes/body (checksum %d)%n",
+            label, (double) elapsed / iterations, (double) bytes / iterations, sink);
+    }
+
+    // Body bytes as SupabaseClient.postUpsert(String) used to send them
+    private static int legacyBody(List<DeliveryJob> jobs) {
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < jobs.size(); i++) {
+            if (i > 0) rows.append(',');
+            rows.append(legacyToJson(jobs.get(i)));
+        }
+        String body = "[" + rows + "]";
+        return body.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static int writerBody(List<DeliveryJob> jobs) {
+        JsonWriter body = JsonWriter.forThread().array(jobs, DeliveryJob::writeJson);
+        body.toBodyPublisher();
+        return body.size();
+    }
+
+    // DeliveryJob.toJson before JsonWriter was introduced
+    private static String legacyToJson(DeliveryJob job) {
+        DateTimeFormatter dtf = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        sb.append("\"job_id\":\"").append(escapeJson(job.getJobId())).append("\",");
+        sb.append("\"customer_name\":\"").append(escapeJson(job.getCustomerName())).append("\",");
+        sb.append("\"delivery_address\":\"").append(escapeJson(job.getDeliveryAddress())).append("\",");
+        sb.append("\"goods_description\":\"").append(escapeJson(job.getGoodsDescription())).append("\",");
+        LocalDateTime createdDate = job.getCreatedDate();
+        String created = OffsetDateTime.of(createdDate, ZoneId.systemDefault().getRules().getOffset(createdDate)).format(dtf);
+        sb.append("\"created_date\":").append("\"" + escapeJson(created) + "\"").append(",");
+        LocalDateTime deliveryDate = job.getDeliveryDate();
+        String delivery = OffsetDateTime.of(deliveryDate, ZoneId.systemDefault().getRules().getOffset(deliveryDate)).format(dtf);
+        sb.append("\"delivery_date\":\"").append(escapeJson(delivery)).append("\",");
+        sb.append("\"assigned_driver_id\":\"").append(escapeJson(job.getAssignedDriverId())).append("\",");
+        sb.append("\"total_amount\":").append(job.getTotalAmount()).append(",");
+        sb.append("\"amount_paid\":").append(job.getAmountPaid()).append(",");
+        sb.append("\"status\":\"").append(escapeJson(job.getStatus().name())).append("\"");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private static String escapeJson(String s) {
+        if (s == null) return "";
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,761 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ In-memory stand-in for the Supabase REST (PostgREST) endpoint, so the
+ persistence paths can be load tested without a live project:
+
+   SupabaseClient.configure(server.getUrl(), "local");
+
+ Supported subset, matching what this codebase sends to /rest/v1/<table>:
+  - GET with select=col,col|*, filters col=eq|neq|gt|gte|lt|lte|is|in.<value>,
+    order=col.asc|desc, limit/offset and Range/Range-Unit paging (Content-Range)
+  - POST of an object or array; with Prefer resolution=merge-duplicates or
+    ignore-duplicates rows are upserted on on_conflict (or the table's key)
+  - PATCH and DELETE with the same filters
+  - Prefer return=representation|minimal and count=exact
+  - POST rpc/checkout_order, as defined in supabase_checkout_order.sql
+ Tables are created on first use. delivery_jobs, delivery_drivers and
+ products start with their keys (job_id, driver_id, product_id) so plain
+ inserts of a duplicate fail with 409 as they would in Postgres.
+
+ setLatency and setErrorRate inject delay and failures (default 503 with
+ Retry-After: 0) into every request, to exercise retries, the circuit
+ breaker and hedging. Run standalone with:
+   java LocalSupabaseServer [port] [minLatencyMs] [maxLatencyMs] [errorRate]
+*/
+public class LocalSupabaseServer {
+    private static final String PREFIX = "/rest/v1/";
+    private static final Set<String> RESERVED_PARAMS =
+        new HashSet<>(Arrays.asList("select", "order", "limit", "offset", "on_conflict", "columns"));
+
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService delayer;
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    private volatile String apiKey;
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+
+    private static final class Table {
+        final List<Map<String, Object>> rows = new ArrayList<>();
+        List<String> key = new ArrayList<>();
+        // conflict-column list -> key value -> row; dropped whenever rows change other than by insert
+        final Map<List<String>, Map<String, Map<String, Object>>> indexes = new HashMap<>();
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+        final Map<String, String> headers = new LinkedHashMap<>();
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    // port 0 picks a free port
+    public LocalSupabaseServer(int port) throws IOException {
+        // Without TCP_NODELAY the separate header and body writes stall ~40 ms on delayed ACKs;
+        // the JDK server reads this once, so it only helps if no HttpServer was created earlier
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 256);
+        workers = Executors.newCachedThreadPool(daemonThreads("local-supabase"));
+        delayer = Executors.newSingleThreadScheduledExecutor(daemonThreads("local-supabase-delay"));
+        server.setExecutor(workers);
+        server.createContext(PREFIX, this::handle);
+        setKey("delivery_jobs", "job_id");
+        setKey("delivery_drivers", "driver_id");
+        setKey("products", "product_id");
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 54321;
+        LocalSupabaseServer server = new LocalSupabaseServer(port);
+        if (args.length > 2) server.setLatency(Long.parseLong(args[1]), Long.parseLong(args[2]));
+        if (args.length > 3) server.setErrorRate(Double.parseDouble(args[3]));
+        server.start();
+        System.out.println("Local Supabase stand-in listening on " + server.getUrl());
+        System.out.println("Point the app at it with SUPABASE_URL=" + server.getUrl() + " SUPABASE_KEY=local");
+    }
+
+    public LocalSupabaseServer start() {
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        server.stop(0);
+        workers.shutdownNow();
+        delayer.shutdownNow();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    // ------------------- Configuration -------------------
+
+    // When set, requests must carry this apikey or get 401; null accepts any key
+    public void setApiKey(String key) {
+        this.apiKey = key;
+    }
+
+    // Every response is delayed by a uniform random time in [minMillis, maxMillis]
+    public void setLatency(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("Latency range must satisfy 0 <= min <= max");
+        }
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = maxMillis;
+    }
+
+    // Fraction of requests (0..1) answered with status instead of being executed
+    public void setErrorRate(double rate, int status) {
+        if (rate < 0 || rate > 1 || status < 400 || status > 599) {
+            throw new IllegalArgumentException("Error rate must be in [0, 1] and status a 4xx/5xx code");
+        }
+        this.errorRate = rate;
+        this.errorStatus = status;
+    }
+
+    public void setErrorRate(double rate) {
+        setErrorRate(rate, errorStatus);
+    }
+
+    // Columns used to detect duplicates when a write has no on_conflict
+    public void setKey(String table, String... columns) {
+        Table t = table(table);
+        synchronized (t) {
+            t.key = Arrays.asList(columns);
+        }
+    }
+
+    public long getRequestCount() { return requests.get(); }
+    public long getInjectedErrorCount() { return injectedErrors.get(); }
+
+    // ------------------- Direct data access -------------------
+
+    // Inserts rows from a JSON object or array, merging into rows with the same table key; bypasses HTTP
+    public void seed(String table, String json) {
+        Table t = table(table);
+        List<Map<String, Object>> incoming = parseRows(json);
+        synchronized (t) {
+            for (Map<String, Object> row : incoming) {
+                upsertRow(t, t.key, row);
+            }
+        }
+    }
+
+    // Current rows of a table as a JSON array
+    public String dump(String table) {
+        Table t = table(table);
+        synchronized (t) {
+            return writeRows(t.rows, null);
+        }
+    }
+
+    public int rowCount(String table) {
+        Table t = table(table);
+        synchronized (t) {
+            return t.rows.size();
+        }
+    }
+
+    public void clear() {
+        for (Table t : tables.values()) {
+            synchronized (t) {
+                t.rows.clear();
+                t.indexes.clear();
+            }
+        }
+    }
+
+    private Table table(String name) {
+        return tables.computeIfAbsent(name, n -> new Table());
+    }
+
+    // ------------------- HTTP handling -------------------
+
+    private void handle(HttpExchange ex) {
+        requests.incrementAndGet();
+        Response resp;
+        try {
+            resp = route(ex);
+        } catch (IllegalArgumentException e) {
+            resp = error(400, "PGRST100", e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            resp = error(500, "XX000", String.valueOf(e));
+        }
+        long min = minLatencyMillis;
+        long max = maxLatencyMillis;
+        long delay = max > 0 ? ThreadLocalRandom.current().nextLong(min, max + 1) : 0;
+        Response toSend = resp;
+        if (delay > 0) {
+            delayer.schedule(() -> send(ex, toSend), delay, TimeUnit.MILLISECONDS);
+        } else {
+            send(ex, toSend);
+        }
+    }
+
+    private Response route(HttpExchange ex) throws IOException {
+        byte[] bodyBytes = ex.getRequestBody().readAllBytes();
+        String key = apiKey;
+        if (key != null && !key.equals(ex.getRequestHeaders().getFirst("apikey"))) {
+            return error(401, "PGRST301", "Invalid API key");
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            Response injected = error(errorStatus, "INJECTED", "Injected failure");
+            injected.headers.put("Retry-After", "0");
+            return injected;
+        }
+
+        String tableName = ex.getRequestURI().getRawPath().substring(PREFIX.length());
+        if (tableName.equals("rpc/checkout_order") && "POST".equals(ex.getRequestMethod())) {
+            return checkoutOrder(new String(bodyBytes, StandardCharsets.UTF_8));
+        }
+        if (tableName.isEmpty() || tableName.startsWith("rpc/")) {
+            return error(404, "PGRST202", "Could not find the function or table " + tableName);
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        List<String[]> filters = new ArrayList<>();
+        parseQuery(ex.getRequestURI().getRawQuery(), params, filters);
+        Set<String> prefer = preferences(ex);
+        Table table = table(tableName);
+        String body = new String(bodyBytes, StandardCharsets.UTF_8);
+
+        switch (ex.getRequestMethod()) {
+            case "GET":
+            case "HEAD":
+                return select(table, params, filters, prefer, ex.getRequestHeaders().getFirst("Range"));
+            case "POST":
+                return insert(table, params, prefer, body);
+            case "PATCH":
+                return update(table, params, filters, prefer, body);
+            case "DELETE":
+                return delete(table, params, filters, prefer);
+            default:
+                return error(405, "PGRST117", "Unsupported HTTP method " + ex.getRequestMethod());
+        }
+    }
+
+    private Response select(Table table, Map<String, String> params, List<String[]> filters,
+                            Set<String> prefer, String range) {
+        synchronized (table) {
+            return selectLocked(table, params, filters, prefer, range);
+        }
+    }
+
+    // Rows are live maps, so they are serialized before the lock is released
+    private Response selectLocked(Table table, Map<String, String> params, List<String[]> filters,
+                                  Set<String> prefer, String range) {
+        List<Map<String, Object>> matched = matching(table, filters);
+        String order = params.get("order");
+        if (order != null) matched.sort(ordering(order));
+
+        int total = matched.size();
+        int from = params.containsKey("offset") ? Integer.parseInt(params.get("offset")) : 0;
+        int to = params.containsKey("limit") ? from + Integer.parseInt(params.get("limit")) - 1 : Integer.MAX_VALUE;
+        if (range != null && !range.isBlank()) {
+            // Range: <first>-[<last>], zero-based and inclusive; it replaces offset/limit
+            int dash = range.indexOf('-');
+            if (dash <= 0) throw new IllegalArgumentException("Invalid Range header " + range);
+            from = Integer.parseInt(range.substring(0, dash).trim());
+            String last = range.substring(dash + 1).trim();
+            to = last.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(last);
+        }
+        if (from > 0 && from >= total) {
+            Response resp = error(416, "PGRST103", "Requested range not satisfiable");
+            resp.headers.put("Content-Range", "*/" + total);
+            return resp;
+        }
+        List<Map<String, Object>> page = matched.subList(Math.min(from, total), (int) Math.min(total, to + 1L));
+        boolean exact = prefer.contains("count=exact");
+        boolean partial = page.size() < total;
+        Response resp = new Response(exact && partial ? 206 : 200, writeRows(page, params.get("select")));
+        String span = page.isEmpty() ? "*" : from + "-" + (from + page.size() - 1);
+        resp.headers.put("Content-Range", span + "/" + (exact ? String.valueOf(total) : "*"));
+        return resp;
+    }
+
+    private Response insert(Table table, Map<String, String> params, Set<String> prefer, String body) {
+        List<Map<String, Object>> incoming = parseRows(body);
+        boolean merge = prefer.contains("resolution=merge-duplicates");
+        boolean ignore = prefer.contains("resolution=ignore-duplicates");
+        List<Map<String, Object>> written = new ArrayList<>();
+        synchronized (table) {
+            List<String> conflict = params.containsKey("on_conflict")
+                ? Arrays.asList(params.get("on_conflict").split(",")) : table.key;
+            if (!merge && !ignore && !conflict.isEmpty()) {
+                // plain insert: the whole request fails on the first duplicate, like one SQL statement
+                Map<String, Map<String, Object>> index = index(table, conflict);
+                Set<String> batchKeys = new HashSet<>();
+                for (Map<String, Object> row : incoming) {
+                    String k = keyOf(row, conflict);
+                    if (index.containsKey(k) || !batchKeys.add(k)) {
+                        return error(409, "23505", "duplicate key value violates unique constraint on " + conflict);
+                    }
+                }
+            }
+            for (Map<String, Object> row : incoming) {
+                Map<String, Object> stored = ignore && !conflict.isEmpty() && index(table, conflict).containsKey(keyOf(row, conflict))
+                    ? null : upsertRow(table, conflict, row);
+                if (stored != null) written.add(stored);
+            }
+            return representation(prefer, 201, written, params.get("select"));
+        }
+    }
+
+    private Response update(Table table, Map<String, String> params, List<String[]> filters,
+                            Set<String> prefer, String body) {
+        List<Map<String, Object>> patches = parseRows(body);
+        if (patches.size() != 1) throw new IllegalArgumentException("PATCH body must be a single object");
+        synchronized (table) {
+            List<Map<String, Object>> matched = matching(table, filters);
+            for (Map<String, Object> row : matched) {
+                row.putAll(patches.get(0));
+            }
+            table.indexes.clear();
+            return representation(prefer, 204, matched, params.get("select"));
+        }
+    }
+
+    private Response delete(Table table, Map<String, String> params, List<String[]> filters, Set<String> prefer) {
+        synchronized (table) {
+            List<Map<String, Object>> matched = matching(table, filters);
+            if (!matched.isEmpty()) {
+                Set<Map<String, Object>> doomed = Collections.newSetFromMap(new IdentityHashMap<>());
+                doomed.addAll(matched);
+                table.rows.removeIf(doomed::contains);
+                table.indexes.clear();
+            }
+            return representation(prefer, 204, matched, params.get("select"));
+        }
+    }
+
+    /*
+     rpc/checkout_order with the semantics of supabase_checkout_order.sql: all
+     lines are checked before any stock changes, stock is decremented relative
+     to the stored value, the order row is inserted, and the result is kept
+     under p_order_key so a repeated call is answered without applying it twice.
+    */
+    private Response checkoutOrder(String body) {
+        List<Map<String, Object>> parsed = parseRows(body);
+        if (parsed.size() != 1) throw new IllegalArgumentException("checkout_order expects one argument object");
+        Map<String, Object> args = parsed.get(0);
+        Object orderKey = args.get("p_order_key");
+        if (!(orderKey instanceof String) || !(args.get("p_lines") instanceof List)) {
+            throw new IllegalArgumentException("checkout_order needs p_order_key and p_lines");
+        }
+        // quantity per product, in product order like the SQL version
+        Map<BigDecimal, BigDecimal> quantities = new TreeMap<>();
+        for (Object line : (List<?>) args.get("p_lines")) {
+            Map<String, Object> l = line instanceof Map ? castRow(line) : null;
+            if (l == null || !(l.get("product_id") instanceof BigDecimal) || !(l.get("quantity") instanceof BigDecimal)) {
+                throw new IllegalArgumentException("Each checkout line needs a numeric product_id and quantity");
+            }
+            quantities.merge((BigDecimal) l.get("product_id"), (BigDecimal) l.get("quantity"), BigDecimal::add);
+        }
+
+        Table products = table("products");
+        Table keys = table("checkout_keys");
+        Table orders = table("orders");
+        List<String> productKey = Collections.singletonList("product_id");
+        List<String> orderKeyColumn = Collections.singletonList("order_key");
+        // always locked in this order; every other path holds one table lock at a time
+        synchronized (products) {
+            synchronized (keys) {
+                synchronized (orders) {
+                    Map<String, Object> probe = Collections.singletonMap("order_key", orderKey);
+                    Map<String, Object> prior = index(keys, orderKeyColumn).get(keyOf(probe, orderKeyColumn));
+                    if (prior != null) {
+                        Map<String, Object> replay = new LinkedHashMap<>(castRow(prior.get("result")));
+                        replay.put("replayed", Boolean.TRUE);
+                        return new Response(200, writeObject(replay));
+                    }
+
+                    Map<String, Map<String, Object>> byId = index(products, productKey);
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    for (Map.Entry<BigDecimal, BigDecimal> e : quantities.entrySet()) {
+                        if (e.getValue().signum() <= 0) {
+                            return error(400, "P0001", "invalid_quantity: product " + e.getKey());
+                        }
+                        Map<String, Object> row = byId.get(keyOf(Collections.singletonMap("product_id", e.getKey()), productKey));
+                        Object stock = row != null ? row.get("stock") : null;
+                        BigDecimal onHand = stock instanceof BigDecimal ? (BigDecimal) stock : null;
+                        if (onHand == null || onHand.compareTo(e.getValue()) < 0) {
+                            return error(400, "P0001", "insufficient_stock: product " + e.getKey());
+                        }
+                        rows.add(row);
+                    }
+
+                    List<Object> stocks = new ArrayList<>();
+                    int i = 0;
+                    for (Map.Entry<BigDecimal, BigDecimal> e : quantities.entrySet()) {
+                        Map<String, Object> row = rows.get(i++);
+                        BigDecimal left = ((BigDecimal) row.get("stock")).subtract(e.getValue());
+                        row.put("stock", left);
+                        Map<String, Object> entry = new LinkedHashMap<>();
+                        entry.put("product_id", e.getKey());
+                        entry.put("stock", left);
+                        stocks.add(entry);
+                    }
+
+                    Map<String, Object> order = new LinkedHashMap<>();
+                    order.put("customer_id", args.get("p_customer_id"));
+                    order.put("items", args.get("p_items"));
+                    order.put("order_total", args.get("p_order_total"));
+                    upsertRow(orders, orders.key, order);
+
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("order_key", orderKey);
+                    result.put("replayed", Boolean.FALSE);
+                    result.put("stock", stocks);
+                    Map<String, Object> keyRow = new LinkedHashMap<>();
+                    keyRow.put("order_key", orderKey);
+                    keyRow.put("result", result);
+                    upsertRow(keys, orderKeyColumn, keyRow);
+                    return new Response(200, writeObject(result));
+                }
+            }
+        }
+    }
+
+    private Response representation(Set<String> prefer, int statusWithout, List<Map<String, Object>> rows, String select) {
+        if (prefer.contains("return=representation")) {
+            return new Response(statusWithout == 204 ? 200 : statusWithout, writeRows(rows, select));
+        }
+        return new Response(statusWithout, "");
+    }
+
+    private void send(HttpExchange ex, Response resp) {
+        try {
+            byte[] bytes = resp.body.getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            resp.headers.forEach((k, v) -> ex.getResponseHeaders().set(k, v));
+            boolean noBody = bytes.length == 0 || "HEAD".equals(ex.getRequestMethod());
+            ex.sendResponseHeaders(resp.status, noBody ? -1 : bytes.length);
+            if (!noBody) {
+                try (OutputStream out = ex.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        } catch (IOException e) {
+            // client went away; nothing to report to
+        } finally {
+            ex.close();
+        }
+    }
+
+    private static Response error(int status, String code, String message) {
+        JsonWriter out = new JsonWriter();
+        out.beginObject();
+        out.name("code").value(code);
+        out.name("details").nullValue();
+        out.name("hint").nullValue();
+        out.name("message").value(message);
+        out.endObject();
+        return new Response(status, out.toString());
+    }
+
+    // ------------------- Query parsing -------------------
+
+    private static void parseQuery(String rawQuery, Map<String, String> params, List<String[]> filters) {
+        if (rawQuery == null || rawQuery.isEmpty()) return;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            String name = URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            if (RESERVED_PARAMS.contains(name)) {
+                params.put(name, value);
+                continue;
+            }
+            int dot = value.indexOf('.');
+            if (dot <= 0) throw new IllegalArgumentException("Invalid filter " + name + "=" + value);
+            filters.add(new String[] { name, value.substring(0, dot), value.substring(dot + 1) });
+        }
+    }
+
+    private static Set<String> preferences(HttpExchange ex) {
+        Set<String> prefer = new HashSet<>();
+        List<String> values = ex.getRequestHeaders().get("Prefer");
+        if (values == null) return prefer;
+        for (String value : values) {
+            for (String token : value.split(",")) {
+                prefer.add(token.trim());
+            }
+        }
+        return prefer;
+    }
+
+    // Rows passing every filter, in insertion order; the caller holds the table lock
+    private static List<Map<String, Object>> matching(Table table, List<String[]> filters) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map<String, Object> row : table.rows) {
+            boolean ok = true;
+            for (String[] f : filters) {
+                if (!test(row.get(f[0]), f[1], f[2])) {
+                    ok = false;
+                    break;
+                }
+            }
+            if (ok) result.add(row);
+        }
+        return result;
+    }
+
+    private static boolean test(Object value, String op, String operand) {
+        switch (op) {
+            case "eq": return value != null && compare(value, operand) == 0;
+            case "neq": return value != null && compare(value, operand) != 0;
+            case "gt": return value != null && compare(value, operand) > 0;
+            case "gte": return value != null && compare(value, operand) >= 0;
+            case "lt": return value != null && compare(value, operand) < 0;
+            case "lte": return value != null && compare(value, operand) <= 0;
+            case "is":
+                if ("null".equalsIgnoreCase(operand)) return value == null;
+                return value instanceof Boolean && value.toString().equalsIgnoreCase(operand);
+            case "in":
+                if (value == null || !operand.startsWith("(") || !operand.endsWith(")")) return false;
+                for (String item : operand.substring(1, operand.length() - 1).split(",")) {
+                    String v = item.trim();
+                    if (v.length() >= 2 && v.startsWith("\"") && v.endsWith("\"")) v = v.substring(1, v.length() - 1);
+                    if (compare(value, v) == 0) return true;
+                }
+                return false;
+            default:
+                throw new IllegalArgumentException("Unsupported filter operator " + op);
+        }
+    }
+
+    // Numbers compare numerically, everything else as text
+    private static int compare(Object value, String operand) {
+        if (value instanceof BigDecimal) {
+            try {
+                return ((BigDecimal) value).compareTo(new BigDecimal(operand));
+            } catch (NumberFormatException ignored) {
+                // fall back to text
+            }
+        }
+        return value.toString().compareTo(operand);
+    }
+
+    private static Comparator<Map<String, Object>> ordering(String order) {
+        Comparator<Map<String, Object>> result = null;
+        for (String term : order.split(",")) {
+            String[] parts = term.trim().split("\\.");
+            String column = parts[0];
+            boolean desc = parts.length > 1 && "desc".equals(parts[1]);
+            // PostgREST default: nulls last ascending, first descending
+            Comparator<Object> values = Comparator.nullsLast(LocalSupabaseServer::compareValues);
+            Comparator<Map<String, Object>> c = Comparator.comparing(row -> row.get(column), values);
+            if (desc) c = c.reversed();
+            result = result == null ? c : result.thenComparing(c);
+        }
+        return result;
+    }
+
+    private static int compareValues(Object a, Object b) {
+        if (a instanceof BigDecimal && b instanceof BigDecimal) {
+            return ((BigDecimal) a).compareTo((BigDecimal) b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    // ------------------- Storage -------------------
+
+    // Inserts row, or merges it into the row with the same conflict key; caller holds the lock
+    private static Map<String, Object> upsertRow(Table table, List<String> conflict, Map<String, Object> row) {
+        if (!conflict.isEmpty()) {
+            Map<String, Map<String, Object>> index = index(table, conflict);
+            String k = keyOf(row, conflict);
+            Map<String, Object> existing = index.get(k);
+            if (existing != null) {
+                existing.putAll(row);
+                return existing;
+            }
+        }
+        Map<String, Object> stored = new LinkedHashMap<>(row);
+        table.rows.add(stored);
+        for (Map.Entry<List<String>, Map<String, Map<String, Object>>> e : table.indexes.entrySet()) {
+            e.getValue().put(keyOf(stored, e.getKey()), stored);
+        }
+        return stored;
+    }
+
+    private static Map<String, Map<String, Object>> index(Table table, List<String> columns) {
+        return table.indexes.computeIfAbsent(columns, cols -> {
+            Map<String, Map<String, Object>> index = new HashMap<>();
+            for (Map<String, Object> row : table.rows) {
+                index.put(keyOf(row, cols), row);
+            }
+            return index;
+        });
+    }
+
+    private static String keyOf(Map<String, Object> row, List<String> columns) {
+        StringBuilder sb = new StringBuilder();
+        for (String column : columns) {
+            Object v = row.get(column);
+            if (v instanceof BigDecimal) v = ((BigDecimal) v).stripTrailingZeros().toPlainString();
+            sb.append(v == null ? "\u0001" : v.toString()).append('\u0000');
+        }
+        return sb.toString();
+    }
+
+    // ------------------- JSON -------------------
+
+    private static List<Map<String, Object>> parseRows(String json) {
+        if (json == null || json.isBlank()) throw new IllegalArgumentException("Empty request body");
+        JsonReader reader = new JsonReader(json);
+        Object value = readValue(reader);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        if (value instanceof Map) {
+            rows.add(castRow(value));
+        } else if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                if (!(item instanceof Map)) throw new IllegalArgumentException("Expected an array of objects");
+                rows.add(castRow(item));
+            }
+        } else {
+            throw new IllegalArgumentException("Expected a JSON object or array");
+        }
+        return rows;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castRow(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    private static Object readValue(JsonReader reader) {
+        switch (reader.peek()) {
+            case BEGIN_ARRAY: {
+                List<Object> list = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) list.add(readValue(reader));
+                reader.endArray();
+                return list;
+            }
+            case BEGIN_OBJECT: {
+                Map<String, Object> map = new LinkedHashMap<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    map.put(name, readValue(reader));
+                }
+                reader.endObject();
+                return map;
+            }
+            case NUMBER:
+                return new BigDecimal(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.skipValue();
+                return null;
+            case STRING:
+                return reader.nextString();
+            default:
+                throw new IllegalArgumentException("Unexpected " + reader.peek());
+        }
+    }
+
+    private static String writeRows(List<Map<String, Object>> rows, String select) {
+        List<String> columns = select == null || select.trim().equals("*") ? null : Arrays.asList(select.split(","));
+        JsonWriter out = new JsonWriter(256 + rows.size() * 128);
+        out.beginArray();
+        for (Map<String, Object> row : rows) {
+            out.beginObject();
+            if (columns == null) {
+                for (Map.Entry<String, Object> e : row.entrySet()) {
+                    out.name(e.getKey());
+                    writeValue(out, e.getValue());
+                }
+            } else {
+                for (String column : columns) {
+                    String c = column.trim();
+                    out.name(c);
+                    writeValue(out, row.get(c));
+                }
+            }
+            out.endObject();
+        }
+        out.endArray();
+        return out.toString();
+    }
+
+    private static String writeObject(Map<String, Object> object) {
+        JsonWriter out = new JsonWriter();
+        writeValue(out, object);
+        return out.toString();
+    }
+
+    private static void writeValue(JsonWriter out, Object value) {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof BigDecimal) {
+            out.rawValue(value.toString());
+        } else if (value instanceof Boolean) {
+            out.value((Boolean) value);
+        } else if (value instanceof List) {
+            out.beginArray();
+            for (Object item : (List<?>) value) writeValue(out, item);
+            out.endArray();
+        } else if (value instanceof Map) {
+            out.beginObject();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                out.name(String.valueOf(e.getKey()));
+                writeValue(out, e.getValue());
+            }
+            out.endObject();
+        } else {
+            out.value(value.toString());
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicLong counter = new AtomicLong();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
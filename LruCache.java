@@ -0,0 +1,205 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/*
+ Bounded, thread-safe LRU cache with an optional time-to-live. Keys are
+ spread over a fixed number of segments, each an access-ordered
+ LinkedHashMap under its own lock, so concurrent readers of different keys
+ rarely contend. Eviction is least-recently-used within a segment, which
+ approximates a global LRU. Entries older than the TTL are treated as
+ missing and dropped on access.
+*/
+public class LruCache<K, V> {
+    // Loads a value on a cache miss; may return null for "does not exist"
+    public interface Loader<K, V> {
+        V load(K key) throws IOException, InterruptedException;
+    }
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long ttlNanos;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static final class Entry<V> {
+        final V value;
+        final long storedAt;
+
+        Entry(V value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private static final class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final AtomicLong evictions;
+
+        Segment(int capacity, AtomicLong evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            if (size() > capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // ttlMillis of 0 keeps entries until they are evicted or invalidated
+    public LruCache(int maxEntries, long ttlMillis) {
+        if (maxEntries < 1 || ttlMillis < 0) {
+            throw new IllegalArgumentException("Cache size must be positive and TTL non-negative");
+        }
+        int segmentCount = Math.min(SEGMENTS, maxEntries);
+        int perSegment = (maxEntries + segmentCount - 1) / segmentCount;
+        // a generic array can only be created raw; every slot is filled with a Segment<K, V> below
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Segment<K, V>[] created = new Segment[segmentCount];
+        this.segments = created;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(perSegment, evictions);
+        }
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+            if (entry != null && !isExpired(entry)) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            if (entry != null) segment.remove(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    // Read-through: returns the cached value or loads, caches and returns it.
+    // Null results are not cached. If another thread stored a value while this
+    // one was loading, that value wins, since it may be newer than the load.
+    public V get(K key, Loader<K, V> loader) throws IOException, InterruptedException {
+        V value = get(key);
+        if (value != null) return value;
+        value = loader.load(key);
+        return value != null ? putIfAbsent(key, value) : null;
+    }
+
+    // Stores value unless a live entry exists; returns whichever value is cached afterwards
+    public V putIfAbsent(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Cache key and value cannot be null");
+        }
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Entry<V> existing = segment.get(key);
+            if (existing != null && !isExpired(existing)) return existing.value;
+            segment.put(key, new Entry<>(value, System.nanoTime()));
+            return value;
+        }
+    }
+
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Cache key and value cannot be null");
+        }
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new Entry<>(value, System.nanoTime()));
+        }
+    }
+
+    public V remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.remove(key);
+            return entry != null ? entry.value : null;
+        }
+    }
+
+    // Removes every entry whose value matches; returns how many were removed
+    public int removeIf(Predicate<? super V> filter) {
+        int removed = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                Iterator<Entry<V>> it = segment.values().iterator();
+                while (it.hasNext()) {
+                    if (filter.test(it.next().value)) {
+                        it.remove();
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    // Snapshot of the live values, in no particular order
+    public List<V> values() {
+        List<V> result = new ArrayList<>();
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                Iterator<Entry<V>> it = segment.values().iterator();
+                while (it.hasNext()) {
+                    Entry<V> entry = it.next();
+                    if (isExpired(entry)) {
+                        it.remove();
+                    } else {
+                        result.add(entry.value);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        int total = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                total += segment.size();
+            }
+        }
+        return total;
+    }
+
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+    public long getEvictionCount() { return evictions.get(); }
+
+    private boolean isExpired(Entry<V> entry) {
+        return ttlNanos > 0 && System.nanoTime() - entry.storedAt > ttlNanos;
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+}
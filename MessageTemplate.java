@@ -0,0 +1,126 @@
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ Small compiled text template. A pattern such as "Job ID: {jobId}\n" is split
+ once into literal segments and bindings; rendering appends each segment into
+ a reused per-thread buffer, so a render costs roughly one String allocation.
+ Bindings append straight into the buffer (see appendMoney / appendDateTime)
+ instead of going through String.format.
+*/
+public final class MessageTemplate<T> {
+    public interface Binding<T> {
+        void appendTo(StringBuilder out, T value);
+    }
+
+    // Shared display format used across job/driver messages
+    public static final DateTimeFormatter DISPLAY_DATE_TIME = DateTimeFormatter.ofPattern("MMM dd, yyyy hh:mm a");
+
+    private static final int MAX_RETAINED_BUFFER = 16 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    private final String[] literals;
+    private final Binding<T>[] bindings;
+
+    private MessageTemplate(String[] literals, Binding<T>[] bindings) {
+        this.literals = literals;
+        this.bindings = bindings;
+    }
+
+    public static <T> MessageTemplate<T> compile(String pattern, Map<String, Binding<T>> bindingsByName) {
+        List<String> literals = new ArrayList<>();
+        List<Binding<T>> bindings = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int open = pattern.indexOf('{', pos);
+            if (open == -1) break;
+            int close = pattern.indexOf('}', open + 1);
+            if (close == -1) {
+                throw new IllegalArgumentException("Unclosed placeholder in template at index " + open);
+            }
+            String name = pattern.substring(open + 1, close);
+            Binding<T> binding = bindingsByName.get(name);
+            if (binding == null) {
+                throw new IllegalArgumentException("No binding for template placeholder {" + name + "}");
+            }
+            literals.add(pattern.substring(pos, open));
+            bindings.add(binding);
+            pos = close + 1;
+        }
+        literals.add(pattern.substring(pos));
+        // a generic array can only be created raw; every element is a Binding<T>
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Binding<T>[] bindingArray = bindings.toArray(new Binding[0]);
+        return new MessageTemplate<>(literals.toArray(new String[0]), bindingArray);
+    }
+
+    public String render(T value) {
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        renderTo(sb, value);
+        String result = sb.toString();
+        if (sb.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    public void renderTo(StringBuilder out, T value) {
+        for (int i = 0; i < bindings.length; i++) {
+            out.append(literals[i]);
+            bindings[i].appendTo(out, value);
+        }
+        out.append(literals[bindings.length]);
+    }
+
+    // ------------------- Formatting helpers -------------------
+
+    // Same output as String.format(Locale.ROOT, "%.2f", value), whatever the default locale
+    public static void appendMoney(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e15) {
+            out.append(String.format(Locale.ROOT, "%.2f", value));
+            return;
+        }
+        double scaled = Math.abs(value) * 100;
+        double fraction = scaled - Math.floor(scaled);
+        long cents = Math.round(scaled);
+        // Ties and negative zero need exact decimal rounding; leave those to the formatter
+        if (Math.abs(fraction - 0.5) < 1e-6 || (value < 0 && cents == 0)) {
+            out.append(String.format(Locale.ROOT, "%.2f", value));
+            return;
+        }
+        if (value < 0) out.append('-');
+        out.append(cents / 100).append('.');
+        long rem = cents % 100;
+        if (rem < 10) out.append('0');
+        out.append(rem);
+    }
+
+    // Whole cents as a decimal amount, e.g. 17250 -> "172.50"; exact, no rounding involved
+    public static void appendCents(StringBuilder out, long cents) {
+        if (cents < 0) {
+            out.append('-');
+            if (cents == Long.MIN_VALUE) {
+                out.append("92233720368547758.08");
+                return;
+            }
+            cents = -cents;
+        }
+        out.append(cents / 100).append('.');
+        long rem = cents % 100;
+        if (rem < 10) out.append('0');
+        out.append(rem);
+    }
+
+    public static void appendDateTime(StringBuilder out, LocalDateTime dateTime, String ifMissing) {
+        if (dateTime == null) {
+            out.append(ifMissing);
+        } else {
+            DISPLAY_DATE_TIME.formatTo(dateTime, out);
+        }
+    }
+}
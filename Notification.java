@@ -0,0 +1,37 @@
+import java.time.LocalDateTime;
+
+// A single outbound message for a driver or customer
+public class Notification {
+    public enum RecipientType { DRIVER, CUSTOMER }
+
+    private final RecipientType recipientType;
+    private final String recipientName;
+    private final String contactInfo;
+    private final String message;
+    private final LocalDateTime createdAt;
+
+    public Notification(RecipientType recipientType, String recipientName, String contactInfo, String message) {
+        this.recipientType = recipientType;
+        this.recipientName = recipientName != null ? recipientName : "";
+        this.contactInfo = contactInfo != null ? contactInfo : "";
+        this.message = message != null ? message : "";
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public RecipientType getRecipientType() { return recipientType; }
+    public String getRecipientName() { return recipientName; }
+    public String getContactInfo() { return contactInfo; }
+    public String getMessage() { return message; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+
+    // Messages with the same key are batched together by NotificationDispatcher
+    public String getRecipientKey() {
+        return recipientType + "|" + recipientName + "|" + contactInfo;
+    }
+
+    @Override
+    public String toString() {
+        return "Sending notification to " + recipientType.name().toLowerCase() + " " + recipientName +
+               " (" + contactInfo + "): " + message;
+    }
+}
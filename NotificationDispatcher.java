@@ -0,0 +1,181 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Asynchronous notification pipeline. submit() only enqueues onto a bounded
+ queue; worker threads drain it in batches, group the batch per recipient
+ and hand each group to the sink. When the queue is full the overflow policy
+ decides whether the caller waits or a message is dropped.
+
+ Workers come from the supplied ThreadFactory. The default makes daemon
+ platform threads; on a JDK with virtual threads pass Thread.ofVirtual().factory().
+*/
+public class NotificationDispatcher implements AutoCloseable {
+    public enum OverflowPolicy { BLOCK, DROP_NEWEST, DROP_OLDEST }
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final NotificationSink sink;
+    private final BlockingQueue<Notification> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public NotificationDispatcher(NotificationSink sink) {
+        this(sink, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, 1, OverflowPolicy.BLOCK, daemonThreads());
+    }
+
+    public NotificationDispatcher(NotificationSink sink, int capacity, int batchSize, int workerCount,
+                                  OverflowPolicy overflowPolicy, ThreadFactory threadFactory) {
+        if (sink == null) {
+            throw new IllegalArgumentException("Notification sink cannot be null");
+        }
+        if (capacity < 1 || batchSize < 1 || workerCount < 1) {
+            throw new IllegalArgumentException("Capacity, batch size and worker count must be positive");
+        }
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy != null ? overflowPolicy : OverflowPolicy.BLOCK;
+        ThreadFactory factory = threadFactory != null ? threadFactory : daemonThreads();
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = factory.newThread(this::runWorker);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    // Returns false if the notification was dropped (queue full or dispatcher closed)
+    public boolean submit(Notification notification) {
+        if (notification == null) return false;
+        if (closed) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        submitted.incrementAndGet();
+        if (!enqueue(notification)) return false;
+        // close() may have finished its last drain while this was being queued;
+        // whoever removes the notification first decides whether it is delivered
+        if (closed && queue.remove(notification)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean enqueue(Notification notification) {
+        switch (overflowPolicy) {
+            case DROP_NEWEST:
+                if (!queue.offer(notification)) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                return true;
+            case DROP_OLDEST:
+                while (!queue.offer(notification)) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                return true;
+            case BLOCK:
+            default:
+                try {
+                    queue.put(notification);
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                    return false;
+                }
+        }
+    }
+
+    private void runWorker() {
+        List<Notification> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                Notification first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) return;
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                deliver(batch);
+            } catch (InterruptedException e) {
+                // Drain what is left before exiting so close() loses nothing
+                queue.drainTo(batch);
+                deliver(batch);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void deliver(List<Notification> batch) {
+        if (batch.isEmpty()) return;
+        Map<String, List<Notification>> byRecipient = new LinkedHashMap<>();
+        for (Notification n : batch) {
+            byRecipient.computeIfAbsent(n.getRecipientKey(), k -> new ArrayList<>()).add(n);
+        }
+        for (List<Notification> group : byRecipient.values()) {
+            try {
+                sink.deliver(group);
+                delivered.addAndGet(group.size());
+            } catch (Exception e) {
+                failed.addAndGet(group.size());
+                System.out.println("Notification delivery failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // Stops accepting new notifications and waits for the queue to drain. Anything
+    // queued after the workers exited is delivered here, on the closing thread.
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        List<Notification> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        deliver(rest);
+    }
+
+    public int getQueuedCount() { return queue.size(); }
+    public long getSubmittedCount() { return submitted.get(); }
+    public long getDeliveredCount() { return delivered.get(); }
+    public long getDroppedCount() { return dropped.get(); }
+    public long getFailedCount() { return failed.get(); }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "notification-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,10 @@
+import java.io.IOException;
+import java.util.List;
+
+/*
+ Destination for notifications. deliver() receives one batch per call and
+ every notification in a batch is for the same recipient.
+*/
+public interface NotificationSink {
+    void deliver(List<Notification> batch) throws IOException;
+}
@@ -9,36 +9,37 @@ import java.util.Map;
 import java.util.HashMap;
 
 public class Order {
-    private static Integer orderID = 0;
+    // Supabase returns at most 1000 rows per request by default
+    private static final int CATALOG_PAGE_SIZE = 1000;
+    private static final String CATALOG_QUERY = "products?select=product_id,product_name,unit_price,stock&order=product_id.asc";
+    // rates in basis points: 1500 = 15%
+    private static final int DEFAULT_TAX_BASIS_POINTS = 1500;
+    private static final int DEFAULT_DISCOUNT_BASIS_POINTS = 0;
+
+    public static final String ORDER_ID_PREFIX = "ORD-";
+
+    // Generated, time-ordered id of the order being built. It is the cart's key in the
+    // reservation ledger and the stem of the checkout_order key, so it stays the same
+    // across failed checkout attempts and is replaced once a checkout succeeds.
+    private String orderID = IdGenerator.shared().nextString(ORDER_ID_PREFIX);
     private String customerID;
     private Date orderDate = new Date();
-    private Double tax;
-    private Double discount;
-    private Item newItem;
-    private List<Item> itemList = new ArrayList<>();
-    private Map<Item, Integer> cart = new HashMap<>();
-    private Double orderTotal;
+    private final ProductCatalog catalog = ProductCatalog.shared();
+    // Lines keyed by product id with subtotal, discount, tax and total kept current in cents
+    private final CartPricing cart = new CartPricing(DEFAULT_DISCOUNT_BASIS_POINTS, DEFAULT_TAX_BASIS_POINTS);
 
     public Order(String customerID) {
-        Order.orderID++;
         this.customerID = customerID;
-        this.orderTotal = 0.0;
-        this.tax = 0.15; // default tax rate
-        this.discount = 0.0; // default discount rate
-
-        Integer id=1;
-        do {
-             try {
-                newItem = fetchFromSupabase(id);
-            } catch (IOException | InterruptedException e) {
-                newItem = null;
-            }
-            id++;
-            if (newItem != null) {
-                itemList.add(newItem);
-            }
-        }while (newItem != null);
-        id = 1; // this will reset id for future use
+
+        try {
+            catalog.ensureLoaded();
+        } catch (IOException | InterruptedException e) {
+            System.out.println("Could not load product catalog: " + e.getMessage());
+        }
+    }
+
+    public String getOrderID() {
+        return orderID;
     }
 
     public String getCustomerID() {
@@ -50,21 +51,28 @@ public class Order {
     }
 
     public double getOrderTotal() {
-        return orderTotal;
+        return cart.getTotalCents() / 100.0;
     }
 
-    private double getTax() {
-        return tax;
+    public long getOrderTotalCents() {
+        return cart.getTotalCents();
     }
 
-    private double getDiscount() {
-        return discount;
+    public CartPricing getPricing() {
+        return cart;
     }
 
     // -------------------- Add All Items --------------------
     public void getAllItems() {
+        List<Item> items;
+        try {
+            items = catalog.allItems();
+        } catch (IOException | InterruptedException e) {
+            System.out.println("Could not load product catalog: " + e.getMessage());
+            return;
+        }
         System.out.println("Available Items:");
-        for (Item item : itemList) {
+        for (Item item : items) {
             System.out.println("Name: " + item.getItemName()
                     + " | Price: " + item.getItemPrice()
                     + " | Stock: " + item.getItemStock());
@@ -73,44 +81,47 @@ public class Order {
 
     // ------------------- Cart Management -------------------
     public void addItemToCart(String product, int quantity) {
-        Item foundItem = null;
-
-        for (Item item : itemList) {
-            if (item.getItemName().equalsIgnoreCase(product.trim())) {
-                foundItem = item;
-                break;
-            }
-        }
+        Item foundItem = findItem(product);
 
         if (foundItem == null) {
             System.out.println("Item not found.");
+            return;
+        }
+
+        if (quantity < 1) {
+            System.out.println("Quantity must be at least 1.");
+            return;
         }
 
-        if (quantity > foundItem.getItemStock()) {
+        // Reserving is atomic, so concurrent carts cannot take more than is in stock
+        if (!catalog.getLedger().tryReserve(orderID, foundItem.getItemID(), quantity)) {
             System.out.println("Not enough stock available.");
+            return;
         }
 
-        cart.put(foundItem, cart.getOrDefault(foundItem, 0) + quantity);
+        cart.add(foundItem, quantity);
     }
 
     public void removeItemFromCart(String product) {
-        Item foundItem = null;
+        Item foundItem = findItem(product);
 
-        for (Item item : itemList) {
-            if (item.getItemName().equalsIgnoreCase(product.trim())) {
-                foundItem = item;
-                break;
-            }
-        }
-
-        if (foundItem != null && cart.containsKey(foundItem)) {
-            cart.remove(foundItem);
+        if (foundItem != null && cart.remove(foundItem.getItemID()) > 0) {
+            catalog.getLedger().release(orderID, foundItem.getItemID());
             System.out.println("Item removed from cart.");
         } else {
             System.out.println("Item not found in cart.");
         }
     }
 
+    private Item findItem(String product) {
+        try {
+            return catalog.findByName(product);
+        } catch (IOException | InterruptedException e) {
+            System.out.println("Could not look up item: " + e.getMessage());
+            return null;
+        }
+    }
+
     public String viewCart() {
         if (cart.isEmpty()) {
             return "Your cart is empty.";
@@ -119,12 +130,10 @@ public class Order {
         StringBuilder sb = new StringBuilder();
         sb.append("{");
         sb.append("\n--- YOUR CART ---").append("\n");
-        for (Map.Entry<Item, Integer> entry : cart.entrySet()) {
-            Item item = entry.getKey();
-            int quantity = entry.getValue();
-            sb.append("Item: ").append(item.getItemName())
-              .append(" | Price: ").append(item.getItemPrice())
-              .append(" | Quantity: ").append(quantity).append("\n");
+        for (int i = 0; i < cart.size(); i++) {
+            sb.append("Item: ").append(cart.itemAt(i).getItemName()).append(" | Price: ");
+            MessageTemplate.appendCents(sb, cart.unitCentsAt(i));
+            sb.append(" | Quantity: ").append(cart.quantityAt(i)).append("\n");
         }
         sb.append("}");
 
@@ -135,135 +144,265 @@ public class Order {
 
     public void clearCart() {
         cart.clear();
-        orderTotal = 0.0;
+        catalog.getLedger().releaseAll(orderID);
         System.out.println("Cart cleared.");
     }
 
     // -------------- Subtotal and Calculations --------------
+    // Renders the lines and totals CartPricing already holds; nothing is recomputed here
     public String printSubtotal() {
-
-        double subTotal = 0;
         StringBuilder sb = new StringBuilder();
-        for (Map.Entry<Item, Integer> entry : cart.entrySet()) {
-            Item item = entry.getKey();
-            int quantity = entry.getValue();
-            double itemTotal = item.getItemPrice() * quantity;
-
-            subTotal += itemTotal;
-
-            sb.append(item.getItemName()).append(String.valueOf(item.getItemPrice())).append(String.valueOf(quantity)).append(itemTotal).append("\n");
+        for (int i = 0; i < cart.size(); i++) {
+            sb.append(cart.itemAt(i).getItemName()).append(" | ");
+            MessageTemplate.appendCents(sb, cart.unitCentsAt(i));
+            sb.append(" x ").append(cart.quantityAt(i)).append(" = ");
+            MessageTemplate.appendCents(sb, cart.lineCentsAt(i));
+            sb.append("\n");
         }
-        sb.append(calculations(subTotal));
+        sb.append(calculations());
         return sb.toString();
     }
 
-    private String calculations(double subTotal) {
-        double discountAmount = subTotal * getDiscount();
-        double discountedTotal = subTotal - discountAmount;
-
-        double taxAmount = discountedTotal * getTax();
-        double finalTotal = discountedTotal + taxAmount;
+    private String calculations() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Subtotal: $");
+        MessageTemplate.appendCents(sb, cart.getSubtotalCents());
+        sb.append("\nDiscount (");
+        MessageTemplate.appendCents(sb, cart.getDiscountBasisPoints());
+        sb.append("%): -$");
+        MessageTemplate.appendCents(sb, cart.getDiscountCents());
+        sb.append("\nTax (");
+        MessageTemplate.appendCents(sb, cart.getTaxBasisPoints());
+        sb.append("%): +$");
+        MessageTemplate.appendCents(sb, cart.getTaxCents());
+        sb.append("\nTotal: $");
+        MessageTemplate.appendCents(sb, cart.getTotalCents());
+        sb.append("\n");
+        return sb.toString();
+    }
 
-        if (finalTotal < 0) {
-            finalTotal = 0;
+    /*
+     Submits the order and every stock decrement as one checkout_order call
+     (see supabase_checkout_order.sql): the database applies relative
+     decrements and inserts the order in one transaction, so a 30-line cart is
+     one round trip and concurrent checkouts cannot overwrite each other's
+     stock. The call carries a key made of the order id and the cart's lines,
+     so SupabaseClient may retry it and a checkout repeated after a lost
+     response is answered from the first one; once the cart is edited the key
+     changes, and the edited cart is checked out on its own rather than being
+     answered with the old cart's result.
+     On failure the cart is kept and false is returned.
+    */
+    public boolean checkout() {
+        if (cart.isEmpty()) return false;
+        if (!holdCartStock()) {
+            System.out.println("Error during checkout: not enough stock left for the items in the cart.");
+            return false;
+        }
+        String error;
+        try {
+            JsonWriter body = JsonWriter.forThread();
+            writeJsonCheckout(body);
+            HttpResponse<String> resp = SupabaseClient.rpc("checkout_order", body, true);
+            if (resp.statusCode() >= 200 && resp.statusCode() < 300) {
+                catalog.getLedger().commit(orderID);
+                applyCheckoutStock(resp.body());
+                clearCart();
+                orderID = IdGenerator.shared().nextString(ORDER_ID_PREFIX);
+                return true;
+            }
+            error = "HTTP " + resp.statusCode() + " " + resp.body();
+        } catch (IOException e) {
+            error = e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "interrupted";
         }
+        System.out.println("Error during checkout: " + error);
+        return false;
+    }
 
-        orderTotal = finalTotal; // final value sent to database
+    // Re-reserves lines whose reservation expired while the cart sat idle
+    private boolean holdCartStock() {
+        StockReservationLedger ledger = catalog.getLedger();
+        for (int i = 0; i < cart.size(); i++) {
+            int productId = cart.productIdAt(i);
+            int missing = cart.quantityAt(i) - ledger.getReservedBy(orderID, productId);
+            if (missing > 0 && !ledger.tryReserve(orderID, productId, missing)) return false;
+        }
+        ledger.touch(orderID);
+        return true;
+    }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("Subtotal: $").append(String.format("%.2f", subTotal)).append("\n");
-        sb.append("Discount (").append(String.format("%.2f", getDiscount() * 100)).append("%): -$").append(String.format("%.2f", discountAmount)).append("\n");
-        sb.append("Tax (").append(String.format("%.2f", getTax() * 100)).append("%): +$").append(String.format("%.2f", taxAmount)).append("\n");
-        sb.append("Total: $").append(String.format("%.2f", finalTotal)).append("\n");
+    // Arguments of checkout_order: the order row plus one {product_id, quantity} per cart line
+    public void writeJsonCheckout(JsonWriter out) {
+        out.beginObject();
+        out.name("p_order_key").value(checkoutKey());
+        out.name("p_customer_id").value(customerID != null ? customerID : "");
+        out.name("p_items").value(cartSummary());
+        out.name("p_order_total").rawValue(orderTotalText());
+        out.name("p_lines").beginArray();
+        for (int i = 0; i < cart.size(); i++) {
+            out.beginObject();
+            out.name("product_id").value((long) cart.productIdAt(i));
+            out.name("quantity").value((long) cart.quantityAt(i));
+            out.endObject();
+        }
+        out.endArray();
+        out.endObject();
+    }
 
-        return sb.toString();
+    // The order id plus a fingerprint of every line and the total
+    private String checkoutKey() {
+        long hash = 17;
+        for (int i = 0; i < cart.size(); i++) {
+            hash = 31 * hash + cart.productIdAt(i);
+            hash = 31 * hash + cart.quantityAt(i);
+            hash = 31 * hash + cart.unitCentsAt(i);
+        }
+        hash = 31 * hash + cart.getTotalCents();
+        return orderID + "-" + Long.toHexString(hash);
     }
 
-    public void checkout() {
-        while (!cart.isEmpty()) {
-            try {
-                for (Map.Entry<Item, Integer> entry : cart.entrySet()) {
-                    Item item = entry.getKey();
-                    int quantity = entry.getValue();
-                    item.setItemStock(item.getItemStock() - quantity);
-                    //add database update logic here for item stock and order creation
-                    saveProductsToSupabase(item.getItemID());
+    // checkout_order answers with the new stock of each product; copy it onto the cached items and ledger
+    private void applyCheckoutStock(String json) {
+        if (json == null || json.isBlank()) return;
+        JsonReader reader = new JsonReader(json);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"stock".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                int productId = -1;
+                int stock = 0;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("product_id".equals(name)) {
+                        productId = reader.nextInt(-1);
+                    } else if ("stock".equals(name)) {
+                        stock = reader.nextInt(0);
+                    } else {
+                        reader.skipValue();
+                    }
                 }
-                saveOrderToSupabase();
-                clearCart();
-            } catch (IOException | InterruptedException e) {
-                System.out.println("Error during checkout: " + e.getMessage());
+                reader.endObject();
+                Item item = cart.itemFor(productId);
+                if (item != null) item.setItemStock(stock);
+                if (productId >= 0) catalog.getLedger().setOnHand(productId, stock);
             }
+            reader.endArray();
         }
+        reader.endObject();
     }
 
     // ------------------- Supabase helpers / JSON -------------------
     public String toJsonOrder() {
-        StringBuilder sb = new StringBuilder();
+        JsonWriter out = new JsonWriter();
+        writeJsonOrder(out);
+        return out.toString();
+    }
+
+    public void writeJsonOrder(JsonWriter out) {
+        out.beginObject();
+        out.name("customer_id").value(customerID != null ? customerID : "");
+        out.name("items").value(cartSummary());
+        out.name("order_total").value(orderTotalText());
+        out.endObject();
+    }
+
+    // Exact decimal total, e.g. "172.50"
+    private String orderTotalText() {
+        StringBuilder sb = new StringBuilder(24);
+        MessageTemplate.appendCents(sb, cart.getTotalCents());
+        return sb.toString();
+    }
+
+    // "name|quantity;" per cart line, as stored in orders.items
+    private String cartSummary() {
         StringBuilder customerItems = new StringBuilder();
-        sb.append("{");
-        sb.append("\"customer_id\":\"").append(escapeJson(customerID)).append("\",");
-        for (Map.Entry<Item, Integer> entry : cart.entrySet()) {
-            Item item = entry.getKey();
-            int quantity = entry.getValue();
-            customerItems.append(escapeJson(item.getItemName())).append("|").append(quantity).append(";");
+        for (int i = 0; i < cart.size(); i++) {
+            customerItems.append(cart.itemAt(i).getItemName()).append("|").append(cart.quantityAt(i)).append(";");
         }
-        sb.append("\"items\":\"").append(escapeJson(customerItems.toString())).append("\",");
-        sb.append("\"order_total\":\"").append(escapeJson(String.valueOf(orderTotal))).append("\"");
-        sb.append("}");
-        return sb.toString();
+        return customerItems.toString();
     }
 
     public String toJsonProducts(Integer id) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        for (Map.Entry<Item, Integer> entry : cart.entrySet()) {
-            Item item = entry.getKey();
-            int quantity = entry.getValue();
-            if (item.getItemID() == id) {
-                String newQuantity = String.valueOf(item.getItemStock());
-                sb.append("\"product_id\":").append(escapeJson(String.valueOf(id))).append(",");
-                sb.append("\"stock\":\"").append(escapeJson(newQuantity)).append("\"");
-                break;
-            }
-        }
-        sb.append("}");
-        return sb.toString();
+        JsonWriter out = new JsonWriter();
+        writeJsonProducts(out, id);
+        return out.toString();
     }
 
-    private static String escapeJson(String s) {
-        if (s == null) return "";
-        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    // Stock row for one product in the cart; an empty object if it is not in the cart
+    public void writeJsonProducts(JsonWriter out, Integer id) {
+        out.beginObject();
+        Item item = id != null ? cart.itemFor(id) : null;
+        if (item != null) {
+            out.name("product_id").value((long) id);
+            out.name("stock").value(String.valueOf(item.getItemStock()));
+        }
+        out.endObject();
     }
 
     public boolean saveOrderToSupabase() throws IOException, InterruptedException {
-        String body = "[" + toJsonOrder() + "]";
+        JsonWriter body = JsonWriter.forThread().beginArray();
+        writeJsonOrder(body);
+        body.endArray();
         HttpResponse<String> resp = SupabaseClient.postUpsert("orders", body, null, null);
         return resp.statusCode() >= 200 && resp.statusCode() < 300;
     }
 
+    // Overwrites the product's stock with the local value; checkout uses checkout_order instead
     public boolean saveProductsToSupabase(Integer id) throws IOException, InterruptedException {
-        String body = "[" + toJsonProducts(id) + "]";
-        String idString = String.valueOf(id);
+        JsonWriter body = JsonWriter.forThread().beginArray();
+        writeJsonProducts(body, id);
+        body.endArray();
         HttpResponse<String> resp = SupabaseClient.postUpsert("products", body, "product_id", null);
+        // the cached row is stale either way: the stock was changed locally before saving
+        catalog.invalidate(id);
         return resp.statusCode() >= 200 && resp.statusCode() < 300;
     }
 
-    private static String extractJsonString(String json, String key) {
-        String look = "\"" + key + "\"";
-        int idx = json.indexOf(look);
-        if (idx == -1) return "";
-        int colon = json.indexOf(":", idx + look.length());
-        if (colon == -1) return "";
-        int start = json.indexOf("\"", colon);
-        if (start == -1) {
-            int end = json.indexOf(",", colon);
-            if (end == -1) end = json.length();
-            return json.substring(colon+1, end).trim().replaceAll("[,\\s\"]", "");
+    /*
+     Loads the whole products table with one range request per page, selecting
+     only the columns Item needs. Catalogs up to CATALOG_PAGE_SIZE rows cost a
+     single round trip, and gaps in product_id no longer end the load early.
+    */
+    public static List<Item> loadCatalog() throws IOException, InterruptedException {
+        List<Item> items = new ArrayList<>();
+        for (int from = 0; ; from += CATALOG_PAGE_SIZE) {
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Range-Unit", "items");
+            headers.put("Range", from + "-" + (from + CATALOG_PAGE_SIZE - 1));
+            HttpResponse<String> resp = SupabaseClient.get(CATALOG_QUERY, headers);
+            // 416: the range starts past the last row
+            if (resp.statusCode() == 416) break;
+            if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
+                throw new IOException("Catalog load failed with HTTP " + resp.statusCode());
+            }
+            List<Item> page = JsonReader.readArray(resp.body(), Item::readRow);
+            items.addAll(page);
+            if (rowsReturned(resp, page.size()) < CATALOG_PAGE_SIZE) break;
+        }
+        return items;
+    }
+
+    // Row count from Content-Range ("0-999/*"), which also counts rows readRow skipped
+    private static int rowsReturned(HttpResponse<String> resp, int parsedRows) {
+        String range = resp.headers().firstValue("Content-Range").orElse("");
+        int dash = range.indexOf('-');
+        int slash = range.indexOf('/');
+        if (dash > 0 && slash > dash) {
+            try {
+                return Integer.parseInt(range.substring(dash + 1, slash)) - Integer.parseInt(range.substring(0, dash)) + 1;
+            } catch (NumberFormatException ignored) {
+                // fall through to the parsed count
+            }
         }
-        int end = json.indexOf("\"", start + 1);
-        if (end == -1) return "";
-        return json.substring(start + 1, end);
+        return parsedRows;
     }
 
     public static Item fetchFromSupabase(Integer productID) throws IOException, InterruptedException {
@@ -272,16 +411,7 @@ public class Order {
         String query = "products?select=*&product_id=eq." + encodedId;
         HttpResponse<String> resp = SupabaseClient.get(query, null);
         if (resp.statusCode() >= 200 && resp.statusCode() < 300) {
-            String body = resp.body();
-            if (body != null && body.trim().startsWith("[") && body.trim().length() > 2) {
-                String obj = body.trim();
-                obj = obj.substring(1, obj.length()-1).trim();
-                String product = extractJsonString(obj, "product_name");
-                String stock = extractJsonString(obj, "stock");
-                String uPrice = extractJsonString(obj, "unit_price");
-                Item i = new Item(productID, product, Double.parseDouble(uPrice), Integer.parseInt(stock));
-                return i;
-            }
+            return JsonReader.readFirst(resp.body(), Item::readRow);
         }
         return null;
     }
@@ -0,0 +1,75 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ Throughput of the delivery_jobs persistence paths against an embedded
+ LocalSupabaseServer, so it runs offline: one blocking save per job, async
+ saves under the in-flight limit, batched saveAllToSupabase, then the same
+ jobs read back by id with the fetch cache cleared. Ends with the
+ SupabaseMetrics table for the run.
+ Run: java PersistenceBenchmark [jobs] [minLatencyMs] [maxLatencyMs] [errorRate]
+*/
+public class PersistenceBenchmark {
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        long minLatency = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        long maxLatency = args.length > 2 ? Long.parseLong(args[2]) : minLatency;
+        double errorRate = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+
+        LocalSupabaseServer server = new LocalSupabaseServer(0).start();
+        try {
+            server.setLatency(minLatency, maxLatency);
+            server.setErrorRate(errorRate);
+            SupabaseClient.configure(server.getUrl(), "local");
+
+            List<DeliveryJob> batch = new ArrayList<>();
+            for (int i = 0; i < jobs; i++) {
+                DeliveryJob job = new DeliveryJob("Customer " + i, i + " Main St, Kingston",
+                    "10x 2x4 Lumber, 5x 50kg Cement Bags", 25000.00, 10000.00);
+                job.setDeliveryDate(LocalDateTime.now().plusDays(1));
+                batch.add(job);
+            }
+
+            long start = System.nanoTime();
+            for (DeliveryJob job : batch) {
+                job.saveToSupabase();
+            }
+            report("blocking save", jobs, start);
+
+            start = System.nanoTime();
+            List<CompletableFuture<Boolean>> saves = new ArrayList<>();
+            for (DeliveryJob job : batch) {
+                saves.add(job.saveToSupabaseAsync());
+            }
+            CompletableFuture.allOf(saves.toArray(CompletableFuture<?>[]::new)).exceptionally(e -> null).join();
+            report("async save   ", jobs, start);
+
+            start = System.nanoTime();
+            for (int from = 0; from < jobs; from += 500) {
+                DeliveryJob.saveAllToSupabase(batch.subList(from, Math.min(jobs, from + 500)));
+            }
+            report("batched save ", jobs, start);
+
+            DeliveryJob.getFetchCache().clear();
+            start = System.nanoTime();
+            int found = 0;
+            for (DeliveryJob job : batch) {
+                if (DeliveryJob.fetchFromSupabase(job.getJobId()) != null) found++;
+            }
+            report("fetch by id  ", jobs, start);
+
+            System.out.println("rows stored: " + server.rowCount("delivery_jobs") + ", fetched: " + found
+                + ", server requests: " + server.getRequestCount() + ", injected errors: " + server.getInjectedErrorCount());
+            System.out.print(SupabaseMetrics.shared().report());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void report(String label, int rows, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%s: %8.0f rows/s (%d rows in %.2f s)%n", label, rows / seconds, rows, seconds);
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ Process-wide product catalog shared by every Order. Products are cached by
+ id in a size-bounded LRU with a TTL, and a normalized-name index (trimmed,
+ lower-case) maps names to ids, so cart lookups are hash lookups instead of
+ scans over a per-order item list.
+
+ The whole catalog is (re)loaded with Order.loadCatalog when it is first
+ needed and again once the TTL has passed. invalidate(productId) drops one
+ product after its stock has been written back; the next lookup fetches the
+ fresh row.
+
+ Every cached product's stock is also fed into the catalog's
+ StockReservationLedger, which carts reserve against.
+*/
+public class ProductCatalog {
+    public static final int DEFAULT_MAX_PRODUCTS = 10_000;
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+    public static final long RESERVATION_SWEEP_MILLIS = 60 * 1000;
+
+    private static volatile ProductCatalog shared;
+
+    private final LruCache<Integer, Item> itemsById;
+    private final StockReservationLedger ledger = new StockReservationLedger();
+    private final Map<String, Integer> idsByName = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final Object loadLock = new Object();
+    // System.nanoTime() of the last full load; 0 when a reload is due
+    private volatile long loadedAt;
+
+    public ProductCatalog() {
+        this(DEFAULT_MAX_PRODUCTS, DEFAULT_TTL_MILLIS);
+    }
+
+    public ProductCatalog(int maxProducts, long ttlMillis) {
+        if (ttlMillis < 1) {
+            throw new IllegalArgumentException("Catalog TTL must be positive");
+        }
+        this.itemsById = new LruCache<>(maxProducts, ttlMillis);
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+    public static ProductCatalog shared() {
+        ProductCatalog instance = shared;
+        if (instance == null) {
+            synchronized (ProductCatalog.class) {
+                instance = shared;
+                if (instance == null) {
+                    instance = new ProductCatalog();
+                    instance.ledger.startSweeper(RESERVATION_SWEEP_MILLIS);
+                    shared = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Loads the full catalog unless a load within the TTL already happened
+    public void ensureLoaded() throws IOException, InterruptedException {
+        if (!isStale()) return;
+        synchronized (loadLock) {
+            // another thread may have reloaded while we waited
+            if (!isStale()) return;
+            List<Item> items = Order.loadCatalog();
+            idsByName.clear();
+            for (Item item : items) {
+                cache(item);
+            }
+            loadedAt = System.nanoTime();
+        }
+    }
+
+    private boolean isStale() {
+        long at = loadedAt;
+        return at == 0 || System.nanoTime() - at > ttlNanos;
+    }
+
+    // Cached products ordered by id, after making sure the catalog is loaded
+    public List<Item> allItems() throws IOException, InterruptedException {
+        ensureLoaded();
+        List<Item> items = itemsById.values();
+        items.sort(Comparator.comparing(Item::getItemID, Comparator.nullsLast(Comparator.naturalOrder())));
+        return items;
+    }
+
+    // Read-through by id: a product missing from the cache is fetched on its own
+    public Item findById(int productId) throws IOException, InterruptedException {
+        Item item = itemsById.get(productId);
+        if (item != null) return item;
+        item = Order.fetchFromSupabase(productId);
+        if (item != null) cache(item);
+        return item;
+    }
+
+    // Case-insensitive name lookup; null if no product has that name
+    public Item findByName(String name) throws IOException, InterruptedException {
+        if (name == null) return null;
+        String key = normalize(name);
+        Integer id = idsByName.get(key);
+        if (id == null) {
+            ensureLoaded();
+            id = idsByName.get(key);
+            if (id == null) return null;
+        }
+        Item item = findById(id);
+        // the product may have been renamed since the index entry was made
+        return item != null && normalize(item.getItemName()).equals(key) ? item : null;
+    }
+
+    // Drops a product so the next lookup reads it again, e.g. after its stock was saved
+    public void invalidate(int productId) {
+        itemsById.remove(productId);
+    }
+
+    public void invalidateAll() {
+        synchronized (loadLock) {
+            itemsById.clear();
+            idsByName.clear();
+            loadedAt = 0;
+        }
+    }
+
+    public StockReservationLedger getLedger() { return ledger; }
+    public int getCachedCount() { return itemsById.size(); }
+    public long getHitCount() { return itemsById.getHitCount(); }
+    public long getMissCount() { return itemsById.getMissCount(); }
+
+    private void cache(Item item) {
+        if (item.getItemID() == null || item.getItemName() == null) return;
+        itemsById.put(item.getItemID(), item);
+        idsByName.put(normalize(item.getItemName()), item.getItemID());
+        if (item.getItemStock() != null) ledger.setOnHand(item.getItemID(), item.getItemStock());
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -13,23 +13,30 @@ public class Review {
     }
 
     public String toJson() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        sb.append("\"customer_id\":\"").append(escapeJson(customerID)).append("\",");
-        sb.append("\"rating\":\"").append(escapeJson(String.valueOf(ratingScore))).append("\",");
-        sb.append("\"review\":\"").append(escapeJson(reviewInfo)).append("\"");
-        sb.append("}");
-        return sb.toString();
+        JsonWriter out = new JsonWriter();
+        writeJson(out);
+        return out.toString();
     }
 
-    private static String escapeJson(String s) {
-        if (s == null) return "";
-        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    public void writeJson(JsonWriter out) {
+        out.beginObject();
+        out.name("customer_id").value(customerID != null ? customerID : "");
+        // rating has always been stored as text
+        out.name("rating").value(String.valueOf(ratingScore));
+        out.name("review").value(reviewInfo != null ? reviewInfo : "");
+        out.endObject();
     }
 
     public boolean saveToSupabase() throws IOException, InterruptedException {
-        String body = "[" + toJson() + "]";
+        JsonWriter body = JsonWriter.forThread().beginArray();
+        writeJson(body);
+        body.endArray();
         HttpResponse<String> resp = SupabaseClient.postUpsert("review", body, null, null);
         return resp.statusCode() >= 200 && resp.statusCode() < 300;
     }
+
+    // Write-behind variant: sent with other queued review rows in one request
+    public void queueSave() {
+        SupabaseWriteBehind.shared().enqueue("review", null, null, toJson());
+    }
 }
@@ -0,0 +1,259 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Stock held by open carts, per product id. Each product has one AtomicLong
+ packing the units on hand (high 32 bits) and the units reserved by carts
+ (low 32 bits), so "is there enough left?" and "take it" are a single CAS
+ and concurrent carts can never reserve more than is on hand.
+
+ A cart's reservations are released when the cart is emptied, when it has
+ been idle longer than the TTL (sweepExpired, run periodically by
+ startSweeper), or turned into a permanent decrement by commit at
+ checkout. Counters are never removed, like DriverCapacityLedger, so a CAS
+ can never land on a detached one.
+*/
+public class StockReservationLedger {
+    public static final long DEFAULT_TTL_MILLIS = 15 * 60 * 1000;
+
+    private final Map<Integer, AtomicLong> stock = new ConcurrentHashMap<>();
+    private final Map<String, CartHold> carts = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+
+    private final AtomicLong reservations = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong expiredCarts = new AtomicLong();
+
+    private final Object sweeperLock = new Object();
+    private ScheduledExecutorService sweeper;
+    private ScheduledFuture<?> sweepTask;
+
+    // Units one cart holds per product; guarded by its own monitor
+    private static final class CartHold {
+        final Map<Integer, Integer> quantities = new HashMap<>();
+        long touchedAt = System.nanoTime();
+        // set once released or committed; a closed hold is already out of the carts map
+        boolean closed;
+    }
+
+    public StockReservationLedger() {
+        this(DEFAULT_TTL_MILLIS);
+    }
+
+    public StockReservationLedger(long ttlMillis) {
+        if (ttlMillis < 1) {
+            throw new IllegalArgumentException("Reservation TTL must be positive");
+        }
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+    // ------------------- Stock levels -------------------
+
+    // Sets the units on hand (e.g. from a catalog load) while keeping current reservations
+    public void setOnHand(int productId, int onHand) {
+        AtomicLong counter = counterFor(productId);
+        long current;
+        do {
+            current = counter.get();
+        } while (!counter.compareAndSet(current, pack(onHand, reserved(current))));
+    }
+
+    public int getOnHand(int productId) {
+        AtomicLong counter = stock.get(productId);
+        return counter != null ? onHand(counter.get()) : 0;
+    }
+
+    public int getReserved(int productId) {
+        AtomicLong counter = stock.get(productId);
+        return counter != null ? reserved(counter.get()) : 0;
+    }
+
+    // Units that can still be reserved; negative if on hand dropped below what is reserved
+    public int getAvailable(int productId) {
+        AtomicLong counter = stock.get(productId);
+        if (counter == null) return 0;
+        long v = counter.get();
+        return onHand(v) - reserved(v);
+    }
+
+    // ------------------- Reservations -------------------
+
+    // Reserves quantity more units for the cart if that many are available; all or nothing
+    public boolean tryReserve(String cartId, int productId, int quantity) {
+        if (cartId == null || quantity < 1) {
+            throw new IllegalArgumentException("Cart id is required and quantity must be positive");
+        }
+        AtomicLong counter = counterFor(productId);
+        while (true) {
+            CartHold hold = carts.computeIfAbsent(cartId, id -> new CartHold());
+            synchronized (hold) {
+                // swept or committed since the lookup; retry with a fresh hold
+                if (hold.closed) continue;
+                if (!reserve(counter, quantity)) {
+                    rejections.incrementAndGet();
+                    // do not leave an empty hold behind for a cart that never reserved anything
+                    if (hold.quantities.isEmpty()) close(cartId, hold, false);
+                    return false;
+                }
+                hold.quantities.merge(productId, quantity, Integer::sum);
+                hold.touchedAt = System.nanoTime();
+                reservations.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    public int getReservedBy(String cartId, int productId) {
+        CartHold hold = carts.get(cartId);
+        if (hold == null) return 0;
+        synchronized (hold) {
+            return hold.closed ? 0 : hold.quantities.getOrDefault(productId, 0);
+        }
+    }
+
+    // Keeps an open cart from expiring
+    public void touch(String cartId) {
+        CartHold hold = carts.get(cartId);
+        if (hold == null) return;
+        synchronized (hold) {
+            hold.touchedAt = System.nanoTime();
+        }
+    }
+
+    // Gives back everything the cart holds for one product
+    public void release(String cartId, int productId) {
+        CartHold hold = carts.get(cartId);
+        if (hold == null) return;
+        synchronized (hold) {
+            if (hold.closed) return;
+            Integer quantity = hold.quantities.remove(productId);
+            if (quantity != null) adjust(productId, 0, -quantity);
+        }
+    }
+
+    public void releaseAll(String cartId) {
+        CartHold hold = carts.get(cartId);
+        if (hold == null) return;
+        synchronized (hold) {
+            close(cartId, hold, false);
+        }
+    }
+
+    // Checkout succeeded: the cart's reserved units leave on-hand stock for good
+    public void commit(String cartId) {
+        CartHold hold = carts.get(cartId);
+        if (hold == null) return;
+        synchronized (hold) {
+            close(cartId, hold, true);
+        }
+    }
+
+    // Releases carts idle for longer than the TTL; returns how many were released
+    public int sweepExpired() {
+        long now = System.nanoTime();
+        int swept = 0;
+        for (Map.Entry<String, CartHold> e : carts.entrySet()) {
+            CartHold hold = e.getValue();
+            synchronized (hold) {
+                if (!hold.closed && now - hold.touchedAt > ttlNanos) {
+                    close(e.getKey(), hold, false);
+                    swept++;
+                }
+            }
+        }
+        expiredCarts.addAndGet(swept);
+        return swept;
+    }
+
+    // Runs sweepExpired every periodMillis on a daemon thread
+    public void startSweeper(long periodMillis) {
+        if (periodMillis < 1) {
+            throw new IllegalArgumentException("Sweep period must be positive");
+        }
+        synchronized (sweeperLock) {
+            if (sweeper == null) {
+                sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "stock-reservation-sweeper");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            if (sweepTask != null) sweepTask.cancel(false);
+            sweepTask = sweeper.scheduleAtFixedRate(this::sweepExpired, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void stopSweeper() {
+        synchronized (sweeperLock) {
+            if (sweepTask != null) {
+                sweepTask.cancel(false);
+                sweepTask = null;
+            }
+        }
+    }
+
+    public int getOpenCartCount() { return carts.size(); }
+    public long getReservationCount() { return reservations.get(); }
+    public long getRejectionCount() { return rejections.get(); }
+    public long getExpiredCartCount() { return expiredCarts.get(); }
+
+    // ------------------- Internals -------------------
+
+    // Caller holds the hold's monitor
+    private void close(String cartId, CartHold hold, boolean commit) {
+        if (hold.closed) return;
+        for (Map.Entry<Integer, Integer> line : hold.quantities.entrySet()) {
+            int quantity = line.getValue();
+            adjust(line.getKey(), commit ? -quantity : 0, -quantity);
+        }
+        hold.quantities.clear();
+        hold.closed = true;
+        carts.remove(cartId, hold);
+    }
+
+    private static boolean reserve(AtomicLong counter, int quantity) {
+        long current;
+        long next;
+        do {
+            current = counter.get();
+            int onHand = onHand(current);
+            int reserved = reserved(current);
+            if (onHand - reserved < quantity) return false;
+            next = pack(onHand, reserved + quantity);
+        } while (!counter.compareAndSet(current, next));
+        return true;
+    }
+
+    private void adjust(int productId, int onHandDelta, int reservedDelta) {
+        AtomicLong counter = counterFor(productId);
+        long current;
+        do {
+            current = counter.get();
+        } while (!counter.compareAndSet(current,
+            pack(onHand(current) + onHandDelta, Math.max(0, reserved(current) + reservedDelta))));
+    }
+
+    private AtomicLong counterFor(int productId) {
+        AtomicLong counter = stock.get(productId);
+        return counter != null ? counter : stock.computeIfAbsent(productId, id -> new AtomicLong());
+    }
+
+    // on hand is signed (it can be set below what is reserved), reserved is never negative
+    private static long pack(int onHand, int reserved) {
+        return ((long) onHand << 32) | (reserved & 0xFFFFFFFFL);
+    }
+
+    private static int onHand(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    private static int reserved(long packed) {
+        return (int) packed;
+    }
+}
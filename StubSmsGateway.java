@@ -0,0 +1,52 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Local stand-in for an SMS provider. Each batch becomes one SMS to the
+ recipient's contact number, after an optional simulated network delay.
+ Sent messages are kept in memory so they can be inspected.
+*/
+public class StubSmsGateway implements NotificationSink {
+    private final long latencyMillis;
+    private final List<String> outbox = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong smsSent = new AtomicLong();
+
+    public StubSmsGateway() {
+        this(0);
+    }
+
+    public StubSmsGateway(long latencyMillis) {
+        this.latencyMillis = Math.max(0, latencyMillis);
+    }
+
+    @Override
+    public void deliver(List<Notification> batch) {
+        if (batch.isEmpty()) return;
+        Notification first = batch.get(0);
+        StringBuilder sms = new StringBuilder();
+        sms.append("SMS to ").append(first.getContactInfo()).append(": ");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) sms.append(" // ");
+            sms.append(batch.get(i).getMessage());
+        }
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        outbox.add(sms.toString());
+        smsSent.incrementAndGet();
+    }
+
+    public long getSmsSent() { return smsSent.get(); }
+
+    public List<String> getOutbox() {
+        synchronized (outbox) {
+            return new ArrayList<>(outbox);
+        }
+    }
+}
@@ -6,8 +6,16 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -19,46 +27,167 @@ import java.util.List;
  If they are not present, this class will attempt to read a .env file
  from the current working directory (or a sensible project path) and
  use values found there.
+
+ Every call has a blocking form and a CompletableFuture form (getAsync,
+ postAsync, ...). Async calls share one HTTP/2 client and are limited to
+ SUPABASE_MAX_IN_FLIGHT concurrent requests (default 64); extra calls
+ queue without blocking the caller and start as earlier ones complete.
+
+ Each attempt times out after SUPABASE_REQUEST_TIMEOUT_MS (default 30 s).
+ Idempotent calls (GET, PATCH, DELETE and upserts with on_conflict) are
+ retried up to SUPABASE_MAX_RETRIES times (default 2) on I/O errors and on
+ 408/429/502/503/504, with jittered exponential backoff that respects
+ Retry-After. A shared circuit breaker opens after
+ SUPABASE_BREAKER_THRESHOLD consecutive failures (default 5) and rejects
+ calls with CircuitOpenException for SUPABASE_BREAKER_OPEN_MS (default
+ 10 s). With SUPABASE_HEDGE_DELAY_MS set, a GET that has not answered by
+ then is sent a second time and the first success is used.
+
+ Every call is timed per method and table in SupabaseMetrics (JMX, and a
+ text report every SUPABASE_METRICS_REPORT_MS when that is set).
 */
 public class SupabaseClient {
-    // values will be initialized in static block (attempt env, then .env)
-    private static final String SUPABASE_URL;
-    private static final String SUPABASE_KEY;
+    // values will be initialized in static block (attempt env, then .env); configure() can repoint them
+    private static volatile String SUPABASE_URL;
+    private static volatile String SUPABASE_KEY;
     private static final boolean DEBUG;
 
     private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
             .connectTimeout(Duration.ofSeconds(10))
             .build();
 
-    static {
-        String url = System.getenv("SUPABASE_URL");
-        String key = System.getenv("SUPABASE_KEY");
-        String debugEnv = System.getenv("SUPABASE_DEBUG");
+    // Async in-flight limit; waiting requests are started as slots free up
+    private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    private static final Object ASYNC_LOCK = new Object();
+    private static final ArrayDeque<Runnable> ASYNC_WAITING = new ArrayDeque<>();
+    private static int asyncInFlight;
+    private static volatile int maxInFlight;
+
+    // Per-attempt timeout, retry policy for idempotent calls, and hedged GETs (0 = off)
+    private static final int DEFAULT_REQUEST_TIMEOUT_MS = 30_000;
+    private static final int DEFAULT_MAX_RETRIES = 2;
+    private static final long DEFAULT_RETRY_BASE_MS = 100;
+    private static final long DEFAULT_RETRY_MAX_MS = 2_000;
+    private static volatile Duration requestTimeout;
+    private static volatile int maxRetries;
+    private static volatile long retryBaseMillis = DEFAULT_RETRY_BASE_MS;
+    private static volatile long retryMaxMillis = DEFAULT_RETRY_MAX_MS;
+    private static volatile long hedgeDelayMillis;
 
+    private static final CircuitBreaker BREAKER;
+    private static final AtomicLong RETRIES = new AtomicLong();
+    private static final AtomicLong HEDGES = new AtomicLong();
+
+    static {
+        String[] names = { "SUPABASE_URL", "SUPABASE_KEY", "SUPABASE_DEBUG" };
         Map<String, String> envFromFile = new HashMap<>();
-        boolean needLoadFile = (url == null || url.trim().isEmpty()) || (key == null || key.trim().isEmpty()) || (debugEnv == null);
+        boolean needLoadFile = false;
+        for (String name : names) {
+            String v = System.getenv(name);
+            if (v == null || v.trim().isEmpty()) needLoadFile = true;
+        }
         if (needLoadFile) {
             try {
                 envFromFile = loadDotEnv();
-                if ((url == null || url.trim().isEmpty()) && envFromFile.containsKey("SUPABASE_URL")) {
-                    url = envFromFile.get("SUPABASE_URL");
-                }
-                if ((key == null || key.trim().isEmpty()) && envFromFile.containsKey("SUPABASE_KEY")) {
-                    key = envFromFile.get("SUPABASE_KEY");
-                }
-                if (debugEnv == null && envFromFile.containsKey("SUPABASE_DEBUG")) {
-                    debugEnv = envFromFile.get("SUPABASE_DEBUG");
-                }
             } catch (Exception e) {
                 // ignore — we'll handle missing config in ensureConfigured
             }
         }
 
+        String url = setting("SUPABASE_URL", envFromFile);
+        String key = setting("SUPABASE_KEY", envFromFile);
         SUPABASE_URL = url != null ? url.trim() : "";
         SUPABASE_KEY = key != null ? key.trim() : "";
-        DEBUG = parseBoolean(debugEnv);
+        DEBUG = parseBoolean(setting("SUPABASE_DEBUG", envFromFile));
+        maxInFlight = parsePositiveInt(setting("SUPABASE_MAX_IN_FLIGHT", envFromFile), DEFAULT_MAX_IN_FLIGHT);
+        requestTimeout = Duration.ofMillis(parsePositiveInt(setting("SUPABASE_REQUEST_TIMEOUT_MS", envFromFile), DEFAULT_REQUEST_TIMEOUT_MS));
+        maxRetries = parseNonNegativeInt(setting("SUPABASE_MAX_RETRIES", envFromFile), DEFAULT_MAX_RETRIES);
+        hedgeDelayMillis = parseNonNegativeInt(setting("SUPABASE_HEDGE_DELAY_MS", envFromFile), 0);
+        BREAKER = new CircuitBreaker("Supabase",
+            parsePositiveInt(setting("SUPABASE_BREAKER_THRESHOLD", envFromFile), 5),
+            parsePositiveInt(setting("SUPABASE_BREAKER_OPEN_MS", envFromFile), 10_000));
+        int reportMillis = parseNonNegativeInt(setting("SUPABASE_METRICS_REPORT_MS", envFromFile), 0);
+        if (reportMillis > 0) {
+            SupabaseMetrics.shared().startReporter(reportMillis, System.out);
+        }
+    }
+
+    // Environment first, then the .env file
+    private static String setting(String name, Map<String, String> envFromFile) {
+        String v = System.getenv(name);
+        return v != null && !v.trim().isEmpty() ? v : envFromFile.get(name);
+    }
+
+    private static int parsePositiveInt(String s, int fallback) {
+        try {
+            int v = s != null ? Integer.parseInt(s.trim()) : fallback;
+            return v > 0 ? v : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static int parseNonNegativeInt(String s, int fallback) {
+        try {
+            int v = s != null ? Integer.parseInt(s.trim()) : fallback;
+            return v >= 0 ? v : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
     }
 
+    // Points the client at another endpoint, e.g. a local stub server in tests
+    public static void configure(String url, String key) {
+        if (url == null || url.trim().isEmpty() || key == null || key.trim().isEmpty()) {
+            throw new IllegalArgumentException("Supabase URL and key cannot be empty");
+        }
+        SUPABASE_URL = url.trim();
+        SUPABASE_KEY = key.trim();
+    }
+
+    public static int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public static void setMaxInFlight(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("In-flight limit must be at least 1");
+        }
+        maxInFlight = limit;
+        drainAsyncQueue();
+    }
+
+    public static void setRequestTimeoutMillis(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("Request timeout must be positive");
+        }
+        requestTimeout = Duration.ofMillis(millis);
+    }
+
+    // Retries apply to GET, PATCH, DELETE and upserts; delays grow from baseDelayMillis
+    // up to maxDelayMillis with full jitter
+    public static void setRetryPolicy(int retries, long baseDelayMillis, long maxDelayMillis) {
+        if (retries < 0 || baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Invalid retry policy");
+        }
+        maxRetries = retries;
+        retryBaseMillis = baseDelayMillis;
+        retryMaxMillis = maxDelayMillis;
+    }
+
+    // A GET still unanswered after delayMillis gets a second copy; the first success wins. 0 disables.
+    public static void setHedgeDelayMillis(long delayMillis) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("Hedge delay cannot be negative");
+        }
+        hedgeDelayMillis = delayMillis;
+    }
+
+    public static CircuitBreaker getCircuitBreaker() { return BREAKER; }
+    public static long getRetryCount() { return RETRIES.get(); }
+    public static long getHedgeCount() { return HEDGES.get(); }
+
     private static boolean parseBoolean(String s) {
         if (s == null) return false;
         s = s.trim().toLowerCase();
@@ -73,24 +202,292 @@ public class SupabaseClient {
 
     private static HttpRequest.Builder baseBuilder(String pathWithQuery) {
         ensureConfigured();
-        String base = SUPABASE_URL.endsWith("/") ? SUPABASE_URL.substring(0, SUPABASE_URL.length() - 1) : SUPABASE_URL;
+        String supabaseUrl = SUPABASE_URL;
+        String key = SUPABASE_KEY;
+        String base = supabaseUrl.endsWith("/") ? supabaseUrl.substring(0, supabaseUrl.length() - 1) : supabaseUrl;
         String url = base + "/rest/v1/" + pathWithQuery;
         return HttpRequest.newBuilder(URI.create(url))
-                .header("apikey", SUPABASE_KEY)
-                .header("Authorization", "Bearer " + SUPABASE_KEY)
+                .timeout(requestTimeout)
+                .header("apikey", key)
+                .header("Authorization", "Bearer " + key)
                 .header("Content-Type", "application/json")
                 .header("Accept", "application/json");
     }
 
     // central send wrapper to log request/response when DEBUG or on error
-    private static HttpResponse<String> sendWithLogging(HttpRequest req, String requestBody) throws IOException, InterruptedException {
-        HttpResponse<String> resp = CLIENT.send(req, HttpResponse.BodyHandlers.ofString());
+    // requestBody is a String, JsonWriter or byte[]; it is only turned into text when logged.
+    // Idempotent requests are retried on I/O errors and transient statuses; only the final
+    // response is logged.
+    private static HttpResponse<String> sendWithLogging(HttpRequest req, Object requestBody, boolean idempotent) throws IOException, InterruptedException {
+        SupabaseMetrics.Endpoint metrics = SupabaseMetrics.shared().endpoint(req);
+        long started = metrics.begin();
+        HttpResponse<String> resp = null;
+        try {
+            resp = sendWithRetries(req, requestBody, idempotent);
+            return resp;
+        } finally {
+            metrics.end(started, req, resp);
+        }
+    }
+
+    private static HttpResponse<String> sendWithRetries(HttpRequest req, Object requestBody, boolean idempotent) throws IOException, InterruptedException {
+        int attempts = idempotent ? 1 + maxRetries : 1;
+        for (int attempt = 1; ; attempt++) {
+            BREAKER.acquirePermission();
+            HttpResponse<String> resp;
+            try {
+                resp = isHedged(req) ? awaitHedged(req) : CLIENT.send(req, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException e) {
+                BREAKER.recordFailure();
+                if (attempt >= attempts) throw e;
+                Thread.sleep(nextRetryDelay(req, attempt, null, e));
+                continue;
+            } catch (InterruptedException | RuntimeException e) {
+                BREAKER.releasePermission();
+                throw e;
+            }
+            recordOutcome(resp);
+            if (attempt >= attempts || !isRetryable(resp.statusCode())) {
+                logExchange(req, requestBody, resp);
+                return resp;
+            }
+            Thread.sleep(nextRetryDelay(req, attempt, resp, null));
+        }
+    }
+
+    // async counterpart of sendWithLogging; each attempt waits for an in-flight slot
+    // without blocking, and retries are scheduled rather than slept
+    private static CompletableFuture<HttpResponse<String>> sendAsyncWithLogging(HttpRequest req, Object requestBody, boolean idempotent) {
+        SupabaseMetrics.Endpoint metrics = SupabaseMetrics.shared().endpoint(req);
+        long started = metrics.begin();
+        CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+        result.whenComplete((resp, err) -> metrics.end(started, req, resp));
+        attemptAsync(req, requestBody, idempotent ? 1 + maxRetries : 1, 1, result);
+        return result;
+    }
+
+    private static void attemptAsync(HttpRequest req, Object requestBody, int attempts, int attempt,
+                                     CompletableFuture<HttpResponse<String>> result) {
+        try {
+            BREAKER.acquirePermission();
+        } catch (CircuitOpenException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        sendLimited(req).whenComplete((resp, err) -> {
+            long delay;
+            if (err != null) {
+                Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                if (!(cause instanceof IOException)) {
+                    BREAKER.releasePermission();
+                    result.completeExceptionally(cause);
+                    return;
+                }
+                BREAKER.recordFailure();
+                if (attempt >= attempts) {
+                    result.completeExceptionally(cause);
+                    return;
+                }
+                delay = nextRetryDelay(req, attempt, null, (IOException) cause);
+            } else {
+                recordOutcome(resp);
+                if (attempt >= attempts || !isRetryable(resp.statusCode())) {
+                    logExchange(req, requestBody, resp);
+                    result.complete(resp);
+                    return;
+                }
+                delay = nextRetryDelay(req, attempt, resp, null);
+            }
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                .execute(() -> attemptAsync(req, requestBody, attempts, attempt + 1, result));
+        });
+    }
+
+    // One send under the async in-flight limit
+    private static CompletableFuture<HttpResponse<String>> sendLimited(HttpRequest req) {
+        CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            try {
+                CompletableFuture<HttpResponse<String>> sent = isHedged(req)
+                    ? sendHedged(req, hedgeDelayMillis)
+                    : CLIENT.sendAsync(req, HttpResponse.BodyHandlers.ofString());
+                sent.whenComplete((resp, err) -> {
+                    releaseAsyncSlot();
+                    if (err != null) {
+                        result.completeExceptionally(err);
+                    } else {
+                        result.complete(resp);
+                    }
+                });
+            } catch (RuntimeException e) {
+                releaseAsyncSlot();
+                result.completeExceptionally(e);
+            }
+        };
+        boolean startNow;
+        synchronized (ASYNC_LOCK) {
+            startNow = asyncInFlight < maxInFlight;
+            if (startNow) {
+                asyncInFlight++;
+            } else {
+                ASYNC_WAITING.add(start);
+            }
+        }
+        if (startNow) {
+            start.run();
+        }
+        return result;
+    }
+
+    private static void releaseAsyncSlot() {
+        synchronized (ASYNC_LOCK) {
+            asyncInFlight--;
+        }
+        drainAsyncQueue();
+    }
+
+    private static void drainAsyncQueue() {
+        while (true) {
+            Runnable next;
+            synchronized (ASYNC_LOCK) {
+                if (asyncInFlight >= maxInFlight || ASYNC_WAITING.isEmpty()) return;
+                next = ASYNC_WAITING.poll();
+                asyncInFlight++;
+            }
+            next.run();
+        }
+    }
+
+    // ------------------- Retry, breaker and hedging -------------------
+
+    // Statuses worth another attempt: timeouts, throttling and gateway errors
+    private static boolean isRetryable(int status) {
+        return status == 408 || status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    // Server-side errors and throttling count against the breaker; client errors do not
+    private static void recordOutcome(HttpResponse<String> resp) {
+        int status = resp.statusCode();
+        if (status >= 500 || status == 408 || status == 429) {
+            BREAKER.recordFailure();
+        } else {
+            BREAKER.recordSuccess();
+        }
+    }
+
+    // Exponential backoff with full jitter, raised to Retry-After when the server sends one
+    private static long nextRetryDelay(HttpRequest req, int attempt, HttpResponse<String> resp, IOException error) {
+        long cap = Math.min(retryMaxMillis, retryBaseMillis << Math.min(attempt - 1, 20));
+        long delay = cap > 0 ? ThreadLocalRandom.current().nextLong(cap + 1) : 0;
+        if (resp != null) {
+            String retryAfter = resp.headers().firstValue("Retry-After").orElse(null);
+            if (retryAfter != null) {
+                try {
+                    delay = Math.max(delay, Math.min(retryMaxMillis, Long.parseLong(retryAfter.trim()) * 1000));
+                } catch (NumberFormatException ignored) {
+                    // HTTP-date form; keep the backoff delay
+                }
+            }
+        }
+        RETRIES.incrementAndGet();
+        SupabaseMetrics.shared().endpoint(req).recordRetry();
+        if (DEBUG) {
+            String reason = resp != null ? "status " + resp.statusCode() : String.valueOf(error);
+            System.out.println("Supabase: retrying " + req.method() + " " + req.uri() + " in " + delay + " ms after " + reason);
+        }
+        return delay;
+    }
+
+    private static boolean isHedged(HttpRequest req) {
+        return hedgeDelayMillis > 0 && "GET".equals(req.method());
+    }
+
+    private static HttpResponse<String> awaitHedged(HttpRequest req) throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<String>> call = sendHedged(req, hedgeDelayMillis);
+        try {
+            return call.get();
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    // Sends req and, if no answer arrived within delayMillis, one backup copy
+    private static CompletableFuture<HttpResponse<String>> sendHedged(HttpRequest req, long delayMillis) {
+        HedgedCall call = new HedgedCall(req);
+        call.launch();
+        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            if (call.startBackup()) {
+                HEDGES.incrementAndGet();
+                call.launch();
+            }
+        });
+        return call.result;
+    }
+
+    // Completes with the first successful copy and cancels the rest; fails only when
+    // every copy that was sent has failed and no backup is still to come
+    private static final class HedgedCall {
+        final CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+        private final HttpRequest req;
+        private final List<CompletableFuture<HttpResponse<String>>> sent = new ArrayList<>(2);
+        private int failed;
+        private boolean backupAllowed = true;
+
+        HedgedCall(HttpRequest req) {
+            this.req = req;
+        }
+
+        void launch() {
+            CompletableFuture<HttpResponse<String>> f = CLIENT.sendAsync(req, HttpResponse.BodyHandlers.ofString());
+            synchronized (this) {
+                sent.add(f);
+            }
+            f.whenComplete(this::onComplete);
+        }
+
+        synchronized boolean startBackup() {
+            if (!backupAllowed || result.isDone()) return false;
+            backupAllowed = false;
+            return true;
+        }
+
+        private void onComplete(HttpResponse<String> resp, Throwable err) {
+            List<CompletableFuture<HttpResponse<String>>> losers;
+            synchronized (this) {
+                if (result.isDone()) return;
+                if (err != null) {
+                    failed++;
+                    if (failed < sent.size()) return;
+                    backupAllowed = false;
+                    result.completeExceptionally(err instanceof CompletionException && err.getCause() != null ? err.getCause() : err);
+                    return;
+                }
+                backupAllowed = false;
+                result.complete(resp);
+                losers = new ArrayList<>(sent);
+            }
+            for (CompletableFuture<HttpResponse<String>> f : losers) {
+                if (!f.isDone()) f.cancel(true);
+            }
+        }
+    }
+
+    private static void logExchange(HttpRequest req, Object requestBody, HttpResponse<String> resp) {
         if (DEBUG || resp.statusCode() >= 300) {
             System.out.println("=== Supabase Request Log ===");
             System.out.println("Method: " + req.method());
             System.out.println("URL   : " + req.uri());
-            if (requestBody != null && !requestBody.isEmpty()) {
-                System.out.println("Body  : " + requestBody);
+            String bodyText = requestBody instanceof byte[]
+                ? new String((byte[]) requestBody, StandardCharsets.UTF_8)
+                : requestBody != null ? requestBody.toString() : null;
+            if (bodyText != null && !bodyText.isEmpty()) {
+                System.out.println("Body  : " + bodyText);
             }
             System.out.println("Status: " + resp.statusCode());
             String body = resp.body();
@@ -104,47 +501,136 @@ public class SupabaseClient {
                 System.out.println("Open your Supabase dashboard → SQL editor → paste and run that file, then re-test.");
             }
         }
-        return resp;
     }
 
     public static HttpResponse<String> get(String pathWithQuery, Map<String, String> extraHeaders) throws IOException, InterruptedException {
         HttpRequest.Builder b = baseBuilder(pathWithQuery).GET();
         if (extraHeaders != null) extraHeaders.forEach(b::header);
         HttpRequest req = b.build();
-        return sendWithLogging(req, null);
+        return sendWithLogging(req, null, true);
     }
 
+    // Plain POST inserts are not retried: a lost response could otherwise insert twice
     public static HttpResponse<String> post(String path, String body, Map<String, String> extraHeaders) throws IOException, InterruptedException {
-        HttpRequest.Builder b = baseBuilder(path).POST(HttpRequest.BodyPublishers.ofString(body));
-        if (extraHeaders != null) extraHeaders.forEach(b::header);
-        HttpRequest req = b.build();
-        return sendWithLogging(req, body);
+        return post(path, body, extraHeaders, false);
     }
 
     public static HttpResponse<String> patch(String pathWithQuery, String body, Map<String, String> extraHeaders) throws IOException, InterruptedException {
         HttpRequest.Builder b = baseBuilder(pathWithQuery).method("PATCH", HttpRequest.BodyPublishers.ofString(body));
         if (extraHeaders != null) extraHeaders.forEach(b::header);
         HttpRequest req = b.build();
-        return sendWithLogging(req, body);
+        return sendWithLogging(req, body, true);
     }
 
     public static HttpResponse<String> delete(String pathWithQuery, Map<String, String> extraHeaders) throws IOException, InterruptedException {
         HttpRequest.Builder b = baseBuilder(pathWithQuery).DELETE();
         if (extraHeaders != null) extraHeaders.forEach(b::header);
         HttpRequest req = b.build();
-        return sendWithLogging(req, null);
+        return sendWithLogging(req, null, true);
+    }
+
+    // Sends the writer's bytes as-is; the writer must not be reused until this returns
+    public static HttpResponse<String> post(String path, JsonWriter body, Map<String, String> extraHeaders) throws IOException, InterruptedException {
+        return post(path, body, extraHeaders, false);
+    }
+
+    private static HttpResponse<String> post(String path, String body, Map<String, String> extraHeaders, boolean idempotent) throws IOException, InterruptedException {
+        HttpRequest.Builder b = baseBuilder(path).POST(HttpRequest.BodyPublishers.ofString(body));
+        if (extraHeaders != null) extraHeaders.forEach(b::header);
+        HttpRequest req = b.build();
+        return sendWithLogging(req, body, idempotent);
+    }
+
+    private static HttpResponse<String> post(String path, JsonWriter body, Map<String, String> extraHeaders, boolean idempotent) throws IOException, InterruptedException {
+        HttpRequest.Builder b = baseBuilder(path).POST(body.toBodyPublisher());
+        if (extraHeaders != null) extraHeaders.forEach(b::header);
+        HttpRequest req = b.build();
+        return sendWithLogging(req, body, idempotent);
     }
 
-    // Convenience: POST with on_conflict for upsert behavior (table?on_conflict=col1,col2)
+    // Convenience: POST with on_conflict for upsert behavior (table?on_conflict=col1,col2).
+    // With conflict columns the upsert can be repeated safely, so it is retried like a PATCH.
     public static HttpResponse<String> postUpsert(String table, String body, String onConflictColumns, Map<String, String> extraHeaders) throws IOException, InterruptedException {
+        return post(upsertPath(table, onConflictColumns), body, upsertHeaders(extraHeaders), hasConflictColumns(onConflictColumns));
+    }
+
+    public static HttpResponse<String> postUpsert(String table, JsonWriter body, String onConflictColumns, Map<String, String> extraHeaders) throws IOException, InterruptedException {
+        return post(upsertPath(table, onConflictColumns), body, upsertHeaders(extraHeaders), hasConflictColumns(onConflictColumns));
+    }
+
+    // Calls a database function through PostgREST (POST rpc/<function>) with its named arguments
+    // as a JSON object. Pass idempotent only when repeating the call is harmless, e.g. it carries
+    // a request key the function deduplicates on.
+    public static HttpResponse<String> rpc(String function, JsonWriter args, boolean idempotent) throws IOException, InterruptedException {
+        return post("rpc/" + function, args, null, idempotent);
+    }
+
+    private static boolean hasConflictColumns(String onConflictColumns) {
+        return onConflictColumns != null && !onConflictColumns.isEmpty();
+    }
+
+    private static String upsertPath(String table, String onConflictColumns) {
         String path = table;
-        if (onConflictColumns != null && !onConflictColumns.isEmpty()) {
+        if (hasConflictColumns(onConflictColumns)) {
             path += "?on_conflict=" + URLEncoder.encode(onConflictColumns, StandardCharsets.UTF_8);
         }
+        return path;
+    }
+
+    private static Map<String, String> upsertHeaders(Map<String, String> extraHeaders) {
         Map<String, String> headers = extraHeaders != null ? new HashMap<>(extraHeaders) : new HashMap<>();
         // Ask PostgREST/Supabase to merge duplicates and return representation
         headers.put("Prefer", "resolution=merge-duplicates,return=representation");
-        return post(path, body, headers);
+        return headers;
+    }
+
+    // --- Async variants: same requests, sent with sendAsync under the in-flight limit ---
+    public static CompletableFuture<HttpResponse<String>> getAsync(String pathWithQuery, Map<String, String> extraHeaders) {
+        HttpRequest.Builder b = baseBuilder(pathWithQuery).GET();
+        if (extraHeaders != null) extraHeaders.forEach(b::header);
+        return sendAsyncWithLogging(b.build(), null, true);
+    }
+
+    public static CompletableFuture<HttpResponse<String>> postAsync(String path, String body, Map<String, String> extraHeaders) {
+        return postAsync(path, body, extraHeaders, false);
+    }
+
+    // The writer's bytes are copied, so it can be reused as soon as this returns
+    public static CompletableFuture<HttpResponse<String>> postAsync(String path, JsonWriter body, Map<String, String> extraHeaders) {
+        return postAsync(path, body, extraHeaders, false);
+    }
+
+    private static CompletableFuture<HttpResponse<String>> postAsync(String path, String body, Map<String, String> extraHeaders, boolean idempotent) {
+        HttpRequest.Builder b = baseBuilder(path).POST(HttpRequest.BodyPublishers.ofString(body));
+        if (extraHeaders != null) extraHeaders.forEach(b::header);
+        return sendAsyncWithLogging(b.build(), body, idempotent);
+    }
+
+    private static CompletableFuture<HttpResponse<String>> postAsync(String path, JsonWriter body, Map<String, String> extraHeaders, boolean idempotent) {
+        byte[] bytes = body.toByteArray();
+        HttpRequest.Builder b = baseBuilder(path).POST(HttpRequest.BodyPublishers.ofByteArray(bytes));
+        if (extraHeaders != null) extraHeaders.forEach(b::header);
+        return sendAsyncWithLogging(b.build(), bytes, idempotent);
+    }
+
+    public static CompletableFuture<HttpResponse<String>> patchAsync(String pathWithQuery, String body, Map<String, String> extraHeaders) {
+        HttpRequest.Builder b = baseBuilder(pathWithQuery).method("PATCH", HttpRequest.BodyPublishers.ofString(body));
+        if (extraHeaders != null) extraHeaders.forEach(b::header);
+        return sendAsyncWithLogging(b.build(), body, true);
+    }
+
+    public static CompletableFuture<HttpResponse<String>> deleteAsync(String pathWithQuery, Map<String, String> extraHeaders) {
+        HttpRequest.Builder b = baseBuilder(pathWithQuery).DELETE();
+        if (extraHeaders != null) extraHeaders.forEach(b::header);
+        return sendAsyncWithLogging(b.build(), null, true);
+    }
+
+    public static CompletableFuture<HttpResponse<String>> postUpsertAsync(String table, String body, String onConflictColumns, Map<String, String> extraHeaders) {
+        return postAsync(upsertPath(table, onConflictColumns), body, upsertHeaders(extraHeaders), hasConflictColumns(onConflictColumns));
+    }
+
+    public static CompletableFuture<HttpResponse<String>> postUpsertAsync(String table, JsonWriter body, String onConflictColumns, Map<String, String> extraHeaders) {
+        return postAsync(upsertPath(table, onConflictColumns), body, upsertHeaders(extraHeaders), hasConflictColumns(onConflictColumns));
     }
 
     // --- Helper: load .env file from working dir or fallback project path ---
@@ -0,0 +1,265 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ Per-endpoint instrumentation for SupabaseClient. An endpoint is an HTTP
+ method plus the table (or rpc) it targets, e.g. "GET delivery_jobs". Each
+ one keeps a latency histogram of whole calls as the caller sees them
+ (retries and hedges included), call, error and retry counts, request and
+ response sizes and an in-flight gauge.
+
+ Endpoints are registered with the platform MBeanServer as
+ supabase:type=Endpoint,method=...,table=... and the totals as
+ supabase:type=Client, so jconsole/VisualVM can watch them live. report()
+ renders everything as a text table, sorted by p99, and startReporter
+ prints that table periodically (SupabaseClient starts it when
+ SUPABASE_METRICS_REPORT_MS is set).
+*/
+public class SupabaseMetrics implements SupabaseMetricsMXBean {
+    public interface EndpointMXBean {
+        String getMethod();
+        String getTable();
+        long getRequestCount();
+        long getErrorCount();
+        long getRetryCount();
+        int getInFlight();
+        long getBytesSent();
+        long getBytesReceived();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP99Millis();
+        double getP999Millis();
+        double getMaxMillis();
+    }
+
+    private static volatile SupabaseMetrics shared;
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final boolean registerMBeans;
+    private final Object reporterLock = new Object();
+    private ScheduledExecutorService reporter;
+    private ScheduledFuture<?> reportTask;
+    private volatile long resetAt = System.nanoTime();
+
+    public SupabaseMetrics(boolean registerMBeans) {
+        this.registerMBeans = registerMBeans;
+        if (registerMBeans) {
+            register(this, "supabase:type=Client");
+        }
+    }
+
+    public static SupabaseMetrics shared() {
+        SupabaseMetrics instance = shared;
+        if (instance == null) {
+            synchronized (SupabaseMetrics.class) {
+                instance = shared;
+                if (instance == null) {
+                    instance = new SupabaseMetrics(true);
+                    shared = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    public final class Endpoint implements EndpointMXBean {
+        private final String method;
+        private final String table;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final AtomicInteger endpointInFlight = new AtomicInteger();
+
+        private Endpoint(String method, String table) {
+            this.method = method;
+            this.table = table;
+        }
+
+        // Returns the start time to pass to end()
+        public long begin() {
+            endpointInFlight.incrementAndGet();
+            inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        // resp is null when the call ended with an exception; 4xx/5xx also count as errors
+        public void end(long startedAt, HttpRequest req, HttpResponse<String> resp) {
+            latency.record((System.nanoTime() - startedAt) / 1_000);
+            endpointInFlight.decrementAndGet();
+            inFlight.decrementAndGet();
+            long sent = req.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+            if (sent > 0) bytesSent.addAndGet(sent);
+            if (resp == null || resp.statusCode() >= 400) errors.incrementAndGet();
+            if (resp != null) {
+                long received = resp.headers().firstValueAsLong("Content-Length")
+                    .orElse(resp.body() != null ? resp.body().length() : 0);
+                bytesReceived.addAndGet(received);
+            }
+        }
+
+        public void recordRetry() {
+            retries.incrementAndGet();
+        }
+
+        private void reset() {
+            latency.reset();
+            errors.set(0);
+            retries.set(0);
+            bytesSent.set(0);
+            bytesReceived.set(0);
+        }
+
+        @Override public String getMethod() { return method; }
+        @Override public String getTable() { return table; }
+        @Override public long getRequestCount() { return latency.getCount(); }
+        @Override public long getErrorCount() { return errors.get(); }
+        @Override public long getRetryCount() { return retries.get(); }
+        @Override public int getInFlight() { return endpointInFlight.get(); }
+        @Override public long getBytesSent() { return bytesSent.get(); }
+        @Override public long getBytesReceived() { return bytesReceived.get(); }
+        @Override public double getMeanMillis() { return latency.getMeanMicros() / 1000.0; }
+        @Override public double getP50Millis() { return latency.percentileMicros(0.5) / 1000.0; }
+        @Override public double getP99Millis() { return latency.percentileMicros(0.99) / 1000.0; }
+        @Override public double getP999Millis() { return latency.percentileMicros(0.999) / 1000.0; }
+        @Override public double getMaxMillis() { return latency.getMaxMicros() / 1000.0; }
+    }
+
+    // Endpoint for a request to .../rest/v1/<table>?...; created and registered on first use
+    public Endpoint endpoint(HttpRequest req) {
+        String path = req.uri().getRawPath();
+        int at = path.indexOf("/rest/v1/");
+        String table = at >= 0 ? path.substring(at + "/rest/v1/".length()) : path;
+        String method = req.method();
+        Endpoint endpoint = endpoints.get(method + ' ' + table);
+        return endpoint != null ? endpoint : endpoint(method, table);
+    }
+
+    public Endpoint endpoint(String method, String table) {
+        return endpoints.computeIfAbsent(method + ' ' + table, key -> {
+            Endpoint created = new Endpoint(method, table);
+            if (registerMBeans) {
+                register(created, "supabase:type=Endpoint,method=" + ObjectName.quote(method)
+                    + ",table=" + ObjectName.quote(table));
+            }
+            return created;
+        });
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return new ArrayList<>(endpoints.values());
+    }
+
+    @Override
+    public long getRequestCount() {
+        long total = 0;
+        for (Endpoint e : endpoints.values()) total += e.getRequestCount();
+        return total;
+    }
+
+    @Override
+    public long getErrorCount() {
+        long total = 0;
+        for (Endpoint e : endpoints.values()) total += e.getErrorCount();
+        return total;
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public int getEndpointCount() {
+        return endpoints.size();
+    }
+
+    // Clears counters and histograms; in-flight gauges keep counting
+    @Override
+    public void reset() {
+        for (Endpoint e : endpoints.values()) e.reset();
+        resetAt = System.nanoTime();
+    }
+
+    @Override
+    public String getReport() {
+        return report();
+    }
+
+    public String report() {
+        List<Endpoint> rows = getEndpoints();
+        rows.sort(Comparator.comparingDouble(Endpoint::getP99Millis).reversed());
+        StringBuilder sb = new StringBuilder();
+        long seconds = (System.nanoTime() - resetAt) / 1_000_000_000L;
+        sb.append("=== Supabase metrics (last ").append(seconds).append(" s, ")
+          .append(inFlight.get()).append(" in flight) ===\n");
+        sb.append(String.format("%-6s %-24s %8s %6s %6s %5s %9s %9s %9s %9s %10s %10s%n",
+            "METHOD", "TABLE", "CALLS", "ERR", "RETRY", "INFL", "p50 ms", "p99 ms", "p999 ms", "max ms", "KB out", "KB in"));
+        for (Endpoint e : rows) {
+            sb.append(String.format("%-6s %-24s %8d %6d %6d %5d %9.1f %9.1f %9.1f %9.1f %10.1f %10.1f%n",
+                e.getMethod(), e.getTable(), e.getRequestCount(), e.getErrorCount(), e.getRetryCount(),
+                e.getInFlight(), e.getP50Millis(), e.getP99Millis(), e.getP999Millis(), e.getMaxMillis(),
+                e.getBytesSent() / 1024.0, e.getBytesReceived() / 1024.0));
+        }
+        return sb.toString();
+    }
+
+    // Prints report() every periodMillis on a daemon thread; replaces any earlier reporter
+    public void startReporter(long periodMillis, PrintStream out) {
+        if (periodMillis < 1) {
+            throw new IllegalArgumentException("Report period must be positive");
+        }
+        synchronized (reporterLock) {
+            if (reporter == null) {
+                reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "supabase-metrics-reporter");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            if (reportTask != null) reportTask.cancel(false);
+            reportTask = reporter.scheduleAtFixedRate(() -> out.print(report()),
+                periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void stopReporter() {
+        synchronized (reporterLock) {
+            if (reportTask != null) {
+                reportTask.cancel(false);
+                reportTask = null;
+            }
+        }
+    }
+
+    private static void register(Object bean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(bean, objectName);
+            }
+        } catch (JMException | SecurityException e) {
+            // metrics still work without JMX
+            System.out.println("SupabaseMetrics: could not register " + name + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,9 @@
+// JMX view of the SupabaseClient totals, registered as supabase:type=Client
+public interface SupabaseMetricsMXBean {
+    long getRequestCount();
+    long getErrorCount();
+    int getInFlight();
+    int getEndpointCount();
+    String getReport();
+    void reset();
+}
@@ -0,0 +1,433 @@
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Write-behind batching for Supabase upserts. Rows are queued per table and
+ sent as one multi-row POST when a table reaches maxBatchRows or every
+ flushInterval, whichever comes first. Rows queued with a key (job_id,
+ driver_id, ...) replace any still-unsent row with the same key, so only
+ the latest version of an entity is written. A JVM shutdown hook flushes
+ whatever is still queued.
+
+ A batch that fails with a retryable error goes back in the queue, and its
+ table then waits out an exponential backoff before the timer sends it
+ again; a row still failing after maxAttempts sends is dropped. Only upserts
+ (an onConflict column) are retried: a plain insert whose response was lost
+ may already be stored, and resending it would insert the row twice, so it
+ is dropped instead, like SupabaseClient does for plain POSTs. A batch the
+ server rejects (other 4xx) is split in halves and resent until the bad
+ rows are isolated, so only those are dropped. Dropped rows are printed
+ and counted.
+
+ A table can have a RowListener that is told which keyed rows were written
+ and which were dropped, e.g. so a fetch cache only holds what the server
+ actually stored. A row superseded by a newer queued version is reported
+ for neither; the newer version's outcome is reported instead.
+*/
+public class SupabaseWriteBehind implements AutoCloseable {
+    public static final int DEFAULT_MAX_BATCH_ROWS = 500;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 2000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final long BASE_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+    private static final int MAX_LOGGED_ROW_CHARS = 200;
+
+    private static volatile SupabaseWriteBehind shared;
+
+    private final int maxBatchRows;
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private final Map<String, TableBuffer> buffers = new HashMap<>();
+    // One flush at a time, so an older row version can never overtake a newer one
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService scheduler;
+    private final Thread shutdownHook;
+    private volatile boolean closed;
+
+    private final AtomicLong rowsQueued = new AtomicLong();
+    private final AtomicLong rowsCoalesced = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong requestsSent = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicLong rowsRejected = new AtomicLong();
+    private final AtomicLong rowsExhausted = new AtomicLong();
+    private final AtomicLong rowsNotRetried = new AtomicLong();
+
+    private enum SendResult { WRITTEN, RETRY, REJECTED }
+
+    /*
+     Outcome of keyed rows. Called on the flushing thread while the queue is
+     locked, so a row queued after the check is never overtaken by the
+     callback for an older version; keep it short and do not enqueue from it.
+    */
+    public interface RowListener {
+        void written(String key, String rowJson);
+        void dropped(String key);
+    }
+
+    private static final String UNKEYED_PREFIX = "\u0000";
+
+    // Rows for one table waiting to be sent; unkeyed rows get a synthetic key
+    private static final class TableBuffer {
+        final String onConflict;
+        final RowListener listener;
+        LinkedHashMap<String, String> rows = new LinkedHashMap<>();
+        // failed sends so far of the queued row with that key; a new version starts again at 0
+        Map<String, Integer> attempts = new HashMap<>();
+        long unkeyedCounter;
+        int consecutiveFailures;
+        long retryAtNanos;
+
+        TableBuffer(String onConflict, RowListener listener) {
+            this.onConflict = onConflict;
+            this.listener = listener;
+        }
+    }
+
+    public SupabaseWriteBehind() {
+        this(DEFAULT_MAX_BATCH_ROWS, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public SupabaseWriteBehind(int maxBatchRows, long flushIntervalMillis) {
+        if (maxBatchRows < 1 || flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("Batch size and flush interval must be positive");
+        }
+        this.maxBatchRows = maxBatchRows;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "supabase-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushScheduled, flushIntervalMillis, flushIntervalMillis,
+            TimeUnit.MILLISECONDS);
+        this.shutdownHook = new Thread(this::flushQuietly, "supabase-write-behind-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    // Process-wide instance used by the entities' queueSave() methods
+    public static SupabaseWriteBehind shared() {
+        SupabaseWriteBehind instance = shared;
+        if (instance == null) {
+            synchronized (SupabaseWriteBehind.class) {
+                instance = shared;
+                if (instance == null) {
+                    instance = new SupabaseWriteBehind();
+                    shared = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /*
+     Queues one JSON object for upsert into table. When key is non-null an
+     unsent row with the same key is replaced. onConflict is passed through
+     to postUpsert and must be the same for every row of a table.
+    */
+    public void enqueue(String table, String onConflict, String key, String rowJson) {
+        enqueue(table, onConflict, key, rowJson, null);
+    }
+
+    // As above, reporting keyed rows to listener; like onConflict it must be the same for every row of a table
+    public void enqueue(String table, String onConflict, String key, String rowJson, RowListener listener) {
+        if (closed) {
+            throw new IllegalStateException("Write-behind batcher has been closed");
+        }
+        boolean full;
+        synchronized (buffers) {
+            TableBuffer buffer = buffers.computeIfAbsent(table, t -> new TableBuffer(onConflict, listener));
+            String rowKey = key != null ? key : UNKEYED_PREFIX + (buffer.unkeyedCounter++);
+            if (buffer.rows.put(rowKey, rowJson) != null) {
+                rowsCoalesced.incrementAndGet();
+            }
+            buffer.attempts.remove(rowKey);
+            full = buffer.rows.size() >= maxBatchRows;
+        }
+        rowsQueued.incrementAndGet();
+        if (full) {
+            scheduler.execute(() -> flushTable(table, false));
+        }
+    }
+
+    // Sends a failing row at most this many times before dropping it
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    // Sends everything queued so far, including tables in backoff; returns the number of rows written
+    public int flush() {
+        return flush(true);
+    }
+
+    private int flush(boolean ignoreBackoff) {
+        List<String> tables;
+        synchronized (buffers) {
+            tables = new ArrayList<>(buffers.keySet());
+        }
+        int written = 0;
+        for (String table : tables) {
+            written += flushTable(table, ignoreBackoff);
+        }
+        return written;
+    }
+
+    private void flushQuietly() {
+        flushQuietly(true);
+    }
+
+    // Timer flushes leave tables in backoff alone
+    private void flushScheduled() {
+        flushQuietly(false);
+    }
+
+    private void flushQuietly(boolean ignoreBackoff) {
+        try {
+            flush(ignoreBackoff);
+        } catch (RuntimeException e) {
+            System.out.println("Write-behind flush failed: " + e.getMessage());
+        }
+    }
+
+    private int flushTable(String table, boolean ignoreBackoff) {
+        synchronized (flushLock) {
+            return flushTableLocked(table, ignoreBackoff);
+        }
+    }
+
+    private int flushTableLocked(String table, boolean ignoreBackoff) {
+        TableBuffer buffer;
+        LinkedHashMap<String, String> pending;
+        Map<String, Integer> attempts;
+        synchronized (buffers) {
+            buffer = buffers.get(table);
+            if (buffer == null || buffer.rows.isEmpty()) return 0;
+            if (!ignoreBackoff && System.nanoTime() - buffer.retryAtNanos < 0) return 0;
+            pending = buffer.rows;
+            attempts = buffer.attempts;
+            buffer.rows = new LinkedHashMap<>();
+            buffer.attempts = new HashMap<>();
+        }
+
+        int written = 0;
+        List<Map.Entry<String, String>> entries = new ArrayList<>(pending.entrySet());
+        List<Map.Entry<String, String>> failed = new ArrayList<>();
+        int start = 0;
+        while (start < entries.size() && failed.isEmpty()) {
+            int end = Math.min(entries.size(), start + maxBatchRows);
+            written += sendEntries(table, buffer, entries.subList(start, end), failed);
+            start = end;
+        }
+        // after a retryable failure the rest of the table waits for the next attempt, unsent
+        requeue(table, failed, entries.subList(start, entries.size()), attempts);
+        return written;
+    }
+
+    // Sends rows as one batch. A rejected batch is bisected until the rejected
+    // rows are isolated; rows that failed with a retryable error go to failed.
+    private int sendEntries(String table, TableBuffer buffer, List<Map.Entry<String, String>> entries,
+                            List<Map.Entry<String, String>> failed) {
+        List<String> batch = new ArrayList<>(entries.size());
+        for (Map.Entry<String, String> e : entries) {
+            batch.add(e.getValue());
+        }
+        SendResult result = send(table, buffer.onConflict, batch);
+        if (result == SendResult.WRITTEN) {
+            notifyWritten(buffer, entries);
+            return entries.size();
+        }
+        if (result == SendResult.RETRY) {
+            failed.addAll(entries);
+            return 0;
+        }
+        if (entries.size() == 1) {
+            rowsRejected.incrementAndGet();
+            notifyDropped(buffer, entries);
+            reportDropped(table, entries.get(0).getValue(), "rejected by the server");
+            return 0;
+        }
+        int mid = entries.size() / 2;
+        return sendEntries(table, buffer, entries.subList(0, mid), failed)
+            + sendEntries(table, buffer, entries.subList(mid, entries.size()), failed);
+    }
+
+    // Rows with a newer version queued since the flush began are skipped; that version reports later
+    private void notifyWritten(TableBuffer buffer, List<Map.Entry<String, String>> entries) {
+        if (buffer.listener == null) return;
+        synchronized (buffers) {
+            for (Map.Entry<String, String> e : entries) {
+                if (isKeyed(e.getKey()) && !buffer.rows.containsKey(e.getKey())) {
+                    buffer.listener.written(e.getKey(), e.getValue());
+                }
+            }
+        }
+    }
+
+    private void notifyDropped(TableBuffer buffer, List<Map.Entry<String, String>> entries) {
+        if (buffer.listener == null) return;
+        synchronized (buffers) {
+            for (Map.Entry<String, String> e : entries) {
+                if (isKeyed(e.getKey()) && !buffer.rows.containsKey(e.getKey())) {
+                    buffer.listener.dropped(e.getKey());
+                }
+            }
+        }
+    }
+
+    private static boolean isKeyed(String rowKey) {
+        return !rowKey.startsWith(UNKEYED_PREFIX);
+    }
+
+    // 4xx responses other than 408/429 mean the rows themselves are bad, so they are not retried
+    private SendResult send(String table, String onConflict, List<String> rows) {
+        JsonWriter body = JsonWriter.forThread().beginArray();
+        for (String row : rows) {
+            body.rawValue(row);
+        }
+        body.endArray();
+        requestsSent.incrementAndGet();
+        try {
+            HttpResponse<String> resp = SupabaseClient.postUpsert(table, body, onConflict, null);
+            int status = resp.statusCode();
+            if (status >= 200 && status < 300) {
+                rowsWritten.addAndGet(rows.size());
+                return SendResult.WRITTEN;
+            }
+            failedRequests.incrementAndGet();
+            boolean retryable = status >= 500 || status == 408 || status == 429;
+            return retryable ? SendResult.RETRY : SendResult.REJECTED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.out.println("Write-behind upsert to " + table + " failed: " + e.getMessage());
+        }
+        failedRequests.incrementAndGet();
+        return SendResult.RETRY;
+    }
+
+    /*
+     Puts failed and unsent rows back ahead of rows queued since the flush
+     began, unless a newer version of the row was queued meanwhile. Failed
+     rows use up one attempt; after maxAttempts they are dropped. Sets the
+     table's backoff from the number of consecutive failed flushes.
+    */
+    private void requeue(String table, List<Map.Entry<String, String>> failed,
+                         List<Map.Entry<String, String>> unsent, Map<String, Integer> attempts) {
+        List<Map.Entry<String, String>> dropped = new ArrayList<>();
+        List<Map.Entry<String, String>> notRetried = new ArrayList<>();
+        TableBuffer buffer;
+        synchronized (buffers) {
+            buffer = buffers.get(table);
+            if (failed.isEmpty()) {
+                buffer.consecutiveFailures = 0;
+                buffer.retryAtNanos = 0;
+            } else {
+                buffer.consecutiveFailures++;
+                buffer.retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryDelayMillis(buffer.consecutiveFailures));
+            }
+            if (failed.isEmpty() && unsent.isEmpty()) return;
+            LinkedHashMap<String, String> retry = new LinkedHashMap<>();
+            Map<String, Integer> retryAttempts = new HashMap<>();
+            for (Map.Entry<String, String> e : failed) {
+                if (buffer.onConflict == null) {
+                    notRetried.add(e);
+                    continue;
+                }
+                if (buffer.rows.containsKey(e.getKey())) continue;
+                int used = attempts.getOrDefault(e.getKey(), 0) + 1;
+                if (used >= maxAttempts) {
+                    dropped.add(e);
+                    continue;
+                }
+                retry.put(e.getKey(), e.getValue());
+                retryAttempts.put(e.getKey(), used);
+            }
+            for (Map.Entry<String, String> e : unsent) {
+                if (buffer.rows.containsKey(e.getKey())) continue;
+                retry.put(e.getKey(), e.getValue());
+                Integer used = attempts.get(e.getKey());
+                if (used != null) retryAttempts.put(e.getKey(), used);
+            }
+            for (Map.Entry<String, String> e : buffer.rows.entrySet()) {
+                retry.put(e.getKey(), e.getValue());
+            }
+            retryAttempts.putAll(buffer.attempts);
+            buffer.rows = retry;
+            buffer.attempts = retryAttempts;
+        }
+        notifyDropped(buffer, dropped);
+        notifyDropped(buffer, notRetried);
+        rowsExhausted.addAndGet(dropped.size());
+        for (Map.Entry<String, String> e : dropped) {
+            reportDropped(table, e.getValue(), "still failing after " + maxAttempts + " attempts");
+        }
+        rowsNotRetried.addAndGet(notRetried.size());
+        for (Map.Entry<String, String> e : notRetried) {
+            reportDropped(table, e.getValue(), "insert failed and is not retried, it may already be stored");
+        }
+    }
+
+    // Exponential in the number of consecutive failures, capped, with jitter over the upper half
+    private static long retryDelayMillis(int failures) {
+        long delay = BASE_RETRY_DELAY_MILLIS << Math.min(failures - 1, 16);
+        delay = Math.min(MAX_RETRY_DELAY_MILLIS, delay);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static void reportDropped(String table, String row, String reason) {
+        String shown = row.length() > MAX_LOGGED_ROW_CHARS ? row.substring(0, MAX_LOGGED_ROW_CHARS) + "..." : row;
+        System.out.println("Write-behind dropped a row for " + table + " (" + reason + "): " + shown);
+    }
+
+    public int getQueuedRowCount() {
+        synchronized (buffers) {
+            int total = 0;
+            for (TableBuffer buffer : buffers.values()) {
+                total += buffer.rows.size();
+            }
+            return total;
+        }
+    }
+
+    public long getRowsQueued() { return rowsQueued.get(); }
+    public long getRowsCoalesced() { return rowsCoalesced.get(); }
+    public long getRowsWritten() { return rowsWritten.get(); }
+    public long getRequestsSent() { return requestsSent.get(); }
+    public long getFailedRequests() { return failedRequests.get(); }
+    public long getRowsRejected() { return rowsRejected.get(); }
+    // Rows dropped after maxAttempts retryable failures
+    public long getRowsExhausted() { return rowsExhausted.get(); }
+    // Plain inserts (no onConflict) that failed and were dropped rather than risk a duplicate
+    public long getRowsNotRetried() { return rowsNotRetried.get(); }
+
+    // Stops the timer and flushes synchronously
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // already shutting down
+        }
+        synchronized (SupabaseWriteBehind.class) {
+            if (shared == this) shared = null;
+        }
+    }
+}
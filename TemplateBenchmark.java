@@ -0,0 +1,64 @@
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/*
+ Compares the old String.format rendering of DeliveryJob.getDetailedInfo with
+ the compiled MessageTemplate version: bytes allocated and time per render.
+ Run: java TemplateBenchmark [iterations]
+*/
+public class TemplateBenchmark {
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        DeliveryJob job = new DeliveryJob("ORD-1001", "Robert Johnson", "123 Main St, Kingston",
+            "10x 2x4 Lumber, 5x 50kg Cement Bags", 25000.00, 10000.00);
+        job.setDeliveryDate(LocalDateTime.now().plusDays(1));
+
+        // warm up both paths
+        for (int i = 0; i < 50_000; i++) {
+            legacyDetailedInfo(job);
+            job.getDetailedInfo();
+        }
+
+        report("String.format ", iterations, () -> legacyDetailedInfo(job));
+        report("MessageTemplate", iterations, job::getDetailedInfo);
+    }
+
+    private static void report(String label, int iterations, java.util.function.Supplier<String> render) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long sink = 0;
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += render.get().length();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        System.out.printf("%s: %8.1f ns/render, %8.1f bytes/render (checksum %d)%n",
+            label, (double) elapsed / iterations, (double) bytes / iterations, sink);
+    }
+
+    // The getDetailedInfo implementation before templates were introduced
+    private static String legacyDetailedInfo(DeliveryJob job) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd, yyyy hh:mm a");
+        StringBuilder sb = new StringBuilder();
+        sb.append("=== Delivery Job Details ===\n");
+        sb.append(String.format("Job ID: %s\n", job.getJobId()));
+        sb.append(String.format("Customer: %s\n", job.getCustomerName()));
+        sb.append(String.format("Address: %s\n", job.getDeliveryAddress()));
+        sb.append(String.format("Goods: %s\n", job.getGoodsDescription()));
+        sb.append(String.format("Total Amount: $%.2f\n", job.getTotalAmount()));
+        sb.append(String.format("Amount Paid: $%.2f\n", job.getAmountPaid()));
+        sb.append(String.format("Balance Due: $%.2f\n", job.getBalanceDue()));
+        sb.append(String.format("Status: %s\n", job.getStatus()));
+        sb.append(String.format("Assigned Driver: %s\n",
+            job.getAssignedDriverId() != null ? job.getAssignedDriverId() : "Not assigned"));
+        sb.append(String.format("Created: %s\n", job.getCreatedDate().format(formatter)));
+        sb.append(String.format("Scheduled Delivery: %s\n",
+            job.getDeliveryDate() != null ? job.getDeliveryDate().format(formatter) : "Not scheduled"));
+        sb.append("==========================");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,70 @@
+-- Atomic checkout used by Order.checkout (POST /rest/v1/rpc/checkout_order).
+-- Run once in the Supabase SQL editor after the products and orders tables exist.
+--
+-- All stock decrements and the order insert happen in one transaction.
+-- Stock is decremented relative to the current row (stock = stock - quantity)
+-- under a row lock, so concurrent checkouts cannot lose updates, and a line
+-- without enough stock aborts the whole checkout. p_order_key makes the call
+-- idempotent: repeating a finished checkout returns the stored result
+-- without touching stock again.
+
+create table if not exists checkout_keys (
+    order_key  text primary key,
+    result     jsonb,
+    created_at timestamptz not null default now()
+);
+
+create or replace function checkout_order(
+    p_order_key   text,
+    p_customer_id text,
+    p_items       text,
+    p_order_total numeric,
+    p_lines       jsonb
+) returns jsonb
+language plpgsql
+as $$
+declare
+    v_line   record;
+    v_stock  integer;
+    v_result jsonb;
+    v_stocks jsonb := '[]'::jsonb;
+begin
+    -- Claim the key; a concurrent call with the same key waits here until the first commits
+    insert into checkout_keys (order_key) values (p_order_key)
+    on conflict (order_key) do nothing;
+    if not found then
+        select result into v_result from checkout_keys where order_key = p_order_key;
+        return v_result || jsonb_build_object('replayed', true);
+    end if;
+
+    -- Lines are applied in product_id order so concurrent checkouts lock rows in the same order
+    for v_line in
+        select (l ->> 'product_id')::integer as product_id, sum((l ->> 'quantity')::integer) as quantity
+        from jsonb_array_elements(p_lines) as l
+        group by 1
+        order by 1
+    loop
+        if v_line.quantity <= 0 then
+            raise exception 'invalid_quantity: product %', v_line.product_id;
+        end if;
+        update products
+           set stock = stock - v_line.quantity
+         where product_id = v_line.product_id
+           and stock >= v_line.quantity
+        returning stock into v_stock;
+        if not found then
+            raise exception 'insufficient_stock: product %', v_line.product_id;
+        end if;
+        v_stocks := v_stocks || jsonb_build_object('product_id', v_line.product_id, 'stock', v_stock);
+    end loop;
+
+    insert into orders (customer_id, items, order_total)
+    values (p_customer_id, p_items, p_order_total);
+
+    v_result := jsonb_build_object('order_key', p_order_key, 'replayed', false, 'stock', v_stocks);
+    update checkout_keys set result = v_result where order_key = p_order_key;
+    return v_result;
+end;
+$$;
+
+grant execute on function checkout_order(text, text, text, numeric, jsonb) to anon, authenticated;